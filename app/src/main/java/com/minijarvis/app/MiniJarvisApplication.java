@@ -3,6 +3,8 @@ package com.minijarvis.app;
 import android.app.Application;
 import android.util.Log;
 
+import com.minijarvis.app.llm.EngineHolder;
+
 /**
  * Application class for MiniJarvis
  */
@@ -16,6 +18,15 @@ public class MiniJarvisApplication extends Application {
         super.onCreate();
         instance = this;
         Log.i(TAG, "MiniJarvis application started");
+        
+        // Load and warm up the model in the background before the first instruction
+        EngineHolder.getInstance(this).warmUp();
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        EngineHolder.getInstance(this).onTrimMemory(level);
     }
     
     public static MiniJarvisApplication getInstance() {
@@ -0,0 +1,160 @@
+package com.minijarvis.app.accessibility;
+
+import android.os.Bundle;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+/**
+ * UINode backed by a live AccessibilityNodeInfo
+ */
+final class AccessibilityUINode implements UINode {
+    private final AccessibilityNodeInfo node;
+
+    private AccessibilityUINode(AccessibilityNodeInfo node) {
+        this.node = node;
+    }
+
+    /**
+     * Wrap a node, taking ownership of it; null stays null
+     */
+    static AccessibilityUINode wrap(AccessibilityNodeInfo node) {
+        return node != null ? new AccessibilityUINode(node) : null;
+    }
+
+    @Override
+    public CharSequence getText() {
+        return node.getText();
+    }
+
+    @Override
+    public CharSequence getContentDescription() {
+        return node.getContentDescription();
+    }
+
+    @Override
+    public CharSequence getViewIdResourceName() {
+        return node.getViewIdResourceName();
+    }
+
+    @Override
+    public CharSequence getClassName() {
+        return node.getClassName();
+    }
+
+    @Override
+    public CharSequence getPackageName() {
+        return node.getPackageName();
+    }
+
+    @Override
+    public boolean isClickable() {
+        return node.isClickable();
+    }
+
+    @Override
+    public boolean hasClickAction() {
+        return node.getActionList().contains(AccessibilityNodeInfo.ACTION_CLICK);
+    }
+
+    @Override
+    public boolean isEditable() {
+        return node.isEditable();
+    }
+
+    @Override
+    public boolean isScrollable() {
+        return node.isScrollable();
+    }
+
+    @Override
+    public boolean isVisibleToUser() {
+        return node.isVisibleToUser();
+    }
+
+    @Override
+    public int getInputType() {
+        return node.getInputType();
+    }
+
+    @Override
+    public int getWindowId() {
+        return node.getWindowId();
+    }
+
+    @Override
+    public int getChildCount() {
+        return node.getChildCount();
+    }
+
+    @Override
+    public UINode getChild(int index) {
+        return wrap(node.getChild(index));
+    }
+
+    @Override
+    public UINode getParent() {
+        return wrap(node.getParent());
+    }
+
+    @Override
+    public UINode findAccessibilityFocus() {
+        return wrap(node.findFocus(AccessibilityNodeInfo.FOCUS_ACCESSIBILITY));
+    }
+
+    @Override
+    public boolean click() {
+        return node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+    }
+
+    @Override
+    public boolean focus() {
+        return node.performAction(AccessibilityNodeInfo.ACTION_FOCUS);
+    }
+
+    @Override
+    public boolean clearFocus() {
+        return node.performAction(AccessibilityNodeInfo.ACTION_CLEAR_FOCUS);
+    }
+
+    @Override
+    public boolean setText(CharSequence text) {
+        Bundle arguments = new Bundle();
+        arguments.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, text);
+        return node.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+    }
+
+    @Override
+    public boolean scrollForward() {
+        return node.performAction(AccessibilityNodeInfo.ACTION_SCROLL_FORWARD);
+    }
+
+    @Override
+    public boolean scrollBackward() {
+        return node.performAction(AccessibilityNodeInfo.ACTION_SCROLL_BACKWARD);
+    }
+
+    @Override
+    public boolean refresh() {
+        return node.refresh();
+    }
+
+    @Override
+    public UINode copy() {
+        return new AccessibilityUINode(AccessibilityNodeInfo.obtain(node));
+    }
+
+    @Override
+    public void recycle() {
+        node.recycle();
+    }
+
+    // AccessibilityNodeInfo equality is by window and source node id
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AccessibilityUINode && node.equals(((AccessibilityUINode) o).node);
+    }
+
+    @Override
+    public int hashCode() {
+        return node.hashCode();
+    }
+}
@@ -0,0 +1,341 @@
+package com.minijarvis.app.accessibility;
+
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializable snapshot of an accessibility node tree, recorded from a live
+ * window with record() and replayed through the UINode interface. Actions
+ * on a replayed node are reported to an ActionListener instead of reaching
+ * a real view; "opens" names the screen a click leads to, so a replay can
+ * follow multi-step flows.
+ */
+public class RecordedNode implements UINode {
+    public static final String ACTION_CLICK = "click";
+    public static final String ACTION_SET_TEXT = "set_text";
+    public static final String ACTION_SCROLL_FORWARD = "scroll_forward";
+    public static final String ACTION_SCROLL_BACKWARD = "scroll_backward";
+
+    /**
+     * Receives the actions performed on a bound tree
+     */
+    public interface ActionListener {
+        void onAction(RecordedNode node, String action);
+
+        /**
+         * Whether the window of root is still on screen; like a live node,
+         * a replayed one fails refresh() once its window is gone
+         */
+        boolean isShowing(RecordedNode root);
+    }
+
+    // Only set on the root
+    @SerializedName("package")
+    public String packageName;
+
+    @SerializedName("class")
+    public String className;
+
+    @SerializedName("text")
+    public String text;
+
+    @SerializedName("content_description")
+    public String contentDescription;
+
+    @SerializedName("view_id")
+    public String viewId;
+
+    @SerializedName("clickable")
+    public boolean clickable;
+
+    @SerializedName("click_action")
+    public boolean clickAction;
+
+    @SerializedName("editable")
+    public boolean editable;
+
+    @SerializedName("scrollable")
+    public boolean scrollable;
+
+    // Inverted so visible, the common case, is the JSON default
+    @SerializedName("hidden")
+    public boolean hidden;
+
+    @SerializedName("focused")
+    public boolean focused;
+
+    // Refuses every action, as a disabled live node does
+    @SerializedName("disabled")
+    public boolean disabled;
+
+    @SerializedName("input_type")
+    public int inputType;
+
+    @SerializedName("opens")
+    public String opens;
+
+    @SerializedName("children")
+    public List<RecordedNode> children;
+
+    private transient RecordedNode parent;
+    private transient RecordedNode root = this;
+    private transient int windowId;
+    private transient ActionListener listener;
+
+    /**
+     * Copy a node tree, e.g. the root of the active window, including which
+     * node holds accessibility focus. Does not take ownership of root.
+     */
+    public static RecordedNode record(UINode root) {
+        RecordedNode recorded = recordTree(root);
+        recorded.packageName = toString(root.getPackageName());
+        UINode focus = root.findAccessibilityFocus();
+        if (focus != null) {
+            recorded.markFocused(recordNode(focus));
+            focus.recycle();
+        }
+        return recorded;
+    }
+
+    private static RecordedNode recordTree(UINode node) {
+        RecordedNode recorded = recordNode(node);
+        int childCount = node.getChildCount();
+        if (childCount > 0) {
+            recorded.children = new ArrayList<>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                UINode child = node.getChild(i);
+                if (child != null) {
+                    recorded.children.add(recordTree(child));
+                    child.recycle();
+                }
+            }
+        }
+        return recorded;
+    }
+
+    private static RecordedNode recordNode(UINode node) {
+        RecordedNode recorded = new RecordedNode();
+        recorded.className = toString(node.getClassName());
+        recorded.text = toString(node.getText());
+        recorded.contentDescription = toString(node.getContentDescription());
+        recorded.viewId = toString(node.getViewIdResourceName());
+        recorded.clickable = node.isClickable();
+        recorded.clickAction = node.hasClickAction();
+        recorded.editable = node.isEditable();
+        recorded.scrollable = node.isScrollable();
+        recorded.hidden = !node.isVisibleToUser();
+        recorded.inputType = node.getInputType();
+        return recorded;
+    }
+
+    public static String toJson(RecordedNode root) {
+        return GsonProvider.get().toJson(root);
+    }
+
+    public static RecordedNode fromJson(Reader reader) {
+        return GsonProvider.get().fromJson(reader, RecordedNode.class);
+    }
+
+    /**
+     * Link parents and attach a window id and action listener to the whole
+     * tree. Call on the root after loading it.
+     */
+    public RecordedNode bind(int windowId, ActionListener listener) {
+        bind(null, this, windowId, listener);
+        return this;
+    }
+
+    private void bind(RecordedNode parent, RecordedNode root, int windowId, ActionListener listener) {
+        this.parent = parent;
+        this.root = root;
+        this.windowId = windowId;
+        this.listener = listener;
+        if (children != null) {
+            for (RecordedNode child : children) {
+                child.bind(this, root, windowId, listener);
+            }
+        }
+    }
+
+    @Override
+    public CharSequence getText() {
+        return text;
+    }
+
+    @Override
+    public CharSequence getContentDescription() {
+        return contentDescription;
+    }
+
+    @Override
+    public CharSequence getViewIdResourceName() {
+        return viewId;
+    }
+
+    @Override
+    public CharSequence getClassName() {
+        return className != null ? className : "";
+    }
+
+    @Override
+    public CharSequence getPackageName() {
+        return root.packageName;
+    }
+
+    @Override
+    public boolean isClickable() {
+        return clickable;
+    }
+
+    @Override
+    public boolean hasClickAction() {
+        return clickAction;
+    }
+
+    @Override
+    public boolean isEditable() {
+        return editable;
+    }
+
+    @Override
+    public boolean isScrollable() {
+        return scrollable;
+    }
+
+    @Override
+    public boolean isVisibleToUser() {
+        return !hidden;
+    }
+
+    @Override
+    public int getInputType() {
+        return inputType;
+    }
+
+    @Override
+    public int getWindowId() {
+        return windowId;
+    }
+
+    @Override
+    public int getChildCount() {
+        return children != null ? children.size() : 0;
+    }
+
+    @Override
+    public UINode getChild(int index) {
+        return children.get(index);
+    }
+
+    @Override
+    public UINode getParent() {
+        return parent;
+    }
+
+    @Override
+    public UINode findAccessibilityFocus() {
+        if (focused) {
+            return this;
+        }
+        if (children != null) {
+            for (RecordedNode child : children) {
+                UINode focus = child.findAccessibilityFocus();
+                if (focus != null) {
+                    return focus;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean click() {
+        return perform(ACTION_CLICK);
+    }
+
+    @Override
+    public boolean focus() {
+        return true;
+    }
+
+    @Override
+    public boolean clearFocus() {
+        return true;
+    }
+
+    // The recording stays as captured; the listener sees the action only
+    @Override
+    public boolean setText(CharSequence text) {
+        return perform(ACTION_SET_TEXT);
+    }
+
+    @Override
+    public boolean scrollForward() {
+        return scrollable && perform(ACTION_SCROLL_FORWARD);
+    }
+
+    @Override
+    public boolean scrollBackward() {
+        return scrollable && perform(ACTION_SCROLL_BACKWARD);
+    }
+
+    @Override
+    public boolean refresh() {
+        return listener == null || listener.isShowing(root);
+    }
+
+    // Recorded nodes are immutable handles to themselves, nothing to copy or recycle
+    @Override
+    public UINode copy() {
+        return this;
+    }
+
+    @Override
+    public void recycle() {
+    }
+
+    private boolean perform(String action) {
+        if (disabled) {
+            return false;
+        }
+        if (listener != null) {
+            listener.onAction(this, action);
+        }
+        return true;
+    }
+
+    /**
+     * Set focused on the node of this tree that matches focus
+     */
+    private boolean markFocused(RecordedNode focus) {
+        if (sameNode(focus)) {
+            focused = true;
+            return true;
+        }
+        if (children != null) {
+            for (RecordedNode child : children) {
+                if (child.markFocused(focus)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean sameNode(RecordedNode other) {
+        return equal(className, other.className) && equal(text, other.text)
+                && equal(contentDescription, other.contentDescription) && equal(viewId, other.viewId);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String toString(CharSequence value) {
+        return value != null ? value.toString() : null;
+    }
+}
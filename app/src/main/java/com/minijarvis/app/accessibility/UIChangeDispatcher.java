@@ -0,0 +1,122 @@
+package com.minijarvis.app.accessibility;
+
+import android.os.Handler;
+
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces bursts of UI change notifications before they reach a
+ * UIStructureCallback. Changes within the window collapse into one
+ * delivery of the latest structure, and structures content-equal to the
+ * previous delivery are dropped.
+ */
+public class UIChangeDispatcher {
+    public static final long DEFAULT_WINDOW_MS = 150;
+
+    private final Handler handler;
+    private final Supplier<UIStructure> source;
+    private volatile long windowMs = DEFAULT_WINDOW_MS;
+    private volatile MiniJarvisAccessibilityService.UIStructureCallback callback;
+
+    private boolean scheduled = false;
+    private UIStructure lastDelivered;
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong structuresDelivered = new AtomicLong();
+    private final AtomicLong duplicatesSkipped = new AtomicLong();
+
+    private final Runnable flush = this::flush;
+
+    /**
+     * @param handler Handler whose thread delivers to the callback
+     * @param source  Builds the current structure; only called once per window
+     */
+    public UIChangeDispatcher(Handler handler, Supplier<UIStructure> source) {
+        this.handler = handler;
+        this.source = source;
+    }
+
+    /**
+     * Record an accessibility event and schedule a delivery if it changed the UI
+     */
+    public void onEvent(boolean changed) {
+        eventsReceived.incrementAndGet();
+        if (!changed || callback == null) {
+            return;
+        }
+        synchronized (this) {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        handler.postDelayed(flush, windowMs);
+    }
+
+    public void setCallback(MiniJarvisAccessibilityService.UIStructureCallback callback) {
+        this.callback = callback;
+        // A new subscriber always gets the next structure
+        cancel();
+    }
+
+    /**
+     * Set the coalescing window in milliseconds (0 delivers on the next loop)
+     */
+    public void setWindowMs(long windowMs) {
+        this.windowMs = Math.max(0, windowMs);
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Drop any pending delivery
+     */
+    public void cancel() {
+        handler.removeCallbacks(flush);
+        synchronized (this) {
+            scheduled = false;
+            lastDelivered = null;
+        }
+    }
+
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    public long getStructuresDelivered() {
+        return structuresDelivered.get();
+    }
+
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped.get();
+    }
+
+    private void flush() {
+        synchronized (this) {
+            scheduled = false;
+        }
+        MiniJarvisAccessibilityService.UIStructureCallback target = callback;
+        if (target == null) {
+            return;
+        }
+
+        UIStructure uiStructure = source.get();
+        if (uiStructure == null) {
+            return;
+        }
+        synchronized (this) {
+            if (uiStructure.equals(lastDelivered)) {
+                duplicatesSkipped.incrementAndGet();
+                return;
+            }
+            lastDelivered = uiStructure;
+        }
+        structuresDelivered.incrementAndGet();
+        target.onUIStructureChanged(uiStructure);
+    }
+}
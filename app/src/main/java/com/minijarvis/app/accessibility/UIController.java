@@ -0,0 +1,37 @@
+package com.minijarvis.app.accessibility;
+
+import com.minijarvis.app.model.UIStructure;
+
+/**
+ * What the agent needs from the screen: observe it, act on it and wait for
+ * it to settle. Implemented by MiniJarvisAccessibilityService on device and
+ * by recorded-screen replays off device.
+ */
+public interface UIController {
+    /**
+     * Current UI structure, or null if no window is available
+     */
+    UIStructure extractCurrentUI();
+
+    /**
+     * @return false if no element with the label was found or it did not accept the click
+     */
+    boolean performClick(String targetLabel);
+
+    /**
+     * @return false if no text field with the label was found or it did not accept the text
+     */
+    boolean performType(String targetLabel, String text);
+
+    /**
+     * @return false if nothing on the screen could scroll
+     */
+    boolean performScroll(String direction);
+
+    boolean performBack();
+
+    /**
+     * @return true if the UI settled within maxWaitMs
+     */
+    boolean awaitUISettle(long maxWaitMs);
+}
@@ -0,0 +1,74 @@
+package com.minijarvis.app.accessibility;
+
+/**
+ * The part of AccessibilityNodeInfo that UI extraction and actions use.
+ * On device it wraps a live node (AccessibilityUINode); off device it is a
+ * node of a recorded tree (RecordedNode), so the same code runs on both.
+ *
+ * <p>Equality follows the node, not the handle: two handles for the same
+ * node are equal. Nodes returned by getChild(), getParent(),
+ * findAccessibilityFocus() and copy() are owned by the caller.
+ */
+public interface UINode {
+    CharSequence getText();
+
+    CharSequence getContentDescription();
+
+    CharSequence getViewIdResourceName();
+
+    CharSequence getClassName();
+
+    CharSequence getPackageName();
+
+    boolean isClickable();
+
+    /**
+     * Whether ACTION_CLICK is among the node's actions
+     */
+    boolean hasClickAction();
+
+    boolean isEditable();
+
+    boolean isScrollable();
+
+    boolean isVisibleToUser();
+
+    int getInputType();
+
+    int getWindowId();
+
+    int getChildCount();
+
+    UINode getChild(int index);
+
+    UINode getParent();
+
+    /**
+     * Node holding accessibility focus in this subtree, or null
+     */
+    UINode findAccessibilityFocus();
+
+    boolean click();
+
+    boolean focus();
+
+    boolean clearFocus();
+
+    boolean setText(CharSequence text);
+
+    boolean scrollForward();
+
+    boolean scrollBackward();
+
+    /**
+     * Reload the node's state, false if it no longer exists
+     */
+    boolean refresh();
+
+    /**
+     * Independent handle to the same node
+     */
+    UINode copy();
+
+    void recycle();
+}
@@ -0,0 +1,81 @@
+package com.minijarvis.app.accessibility;
+
+/**
+ * Tracks the accessibility event stream to tell when the UI has settled.
+ * The quiet interval adapts to the observed gap between events of the
+ * current screen: fast screens settle in well under 100 ms, animated ones
+ * wait longer before the next step reads the tree.
+ */
+public class UISettleMonitor {
+    private static final long MIN_QUIET_MS = 80;
+    private static final long MAX_QUIET_MS = 400;
+    private static final long QUIET_GAP_FACTOR = 3;
+    // Gaps longer than this are idle time, not part of a burst
+    private static final long MAX_BURST_GAP_MS = 1000;
+    private static final double GAP_SMOOTHING = 0.2;
+
+    private final Object lock = new Object();
+    private long lastEventNanos = 0;
+    private double averageGapMs = 50;
+
+    /**
+     * Record an accessibility event
+     */
+    public void onEvent() {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            if (lastEventNanos != 0) {
+                long gapMs = (now - lastEventNanos) / 1000000L;
+                if (gapMs < MAX_BURST_GAP_MS) {
+                    averageGapMs += GAP_SMOOTHING * (gapMs - averageGapMs);
+                }
+            }
+            lastEventNanos = now;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Current quiet interval that counts as settled
+     */
+    public long getQuietWindowMs() {
+        synchronized (lock) {
+            long quiet = (long) (averageGapMs * QUIET_GAP_FACTOR);
+            return Math.max(MIN_QUIET_MS, Math.min(MAX_QUIET_MS, quiet));
+        }
+    }
+
+    /**
+     * Block until no event has arrived for the quiet interval, counting from
+     * the time of the call so an action's own events are waited for.
+     *
+     * @return true if the UI settled, false if maxWaitMs elapsed first or the
+     *         thread was interrupted
+     */
+    public boolean awaitSettle(long maxWaitMs) {
+        long start = System.nanoTime();
+        long deadline = start + maxWaitMs * 1000000L;
+
+        synchronized (lock) {
+            while (true) {
+                long now = System.nanoTime();
+                long quietNanos = getQuietWindowMs() * 1000000L;
+                long since = now - Math.max(start, lastEventNanos);
+                if (since >= quietNanos) {
+                    return true;
+                }
+                if (now >= deadline) {
+                    return false;
+                }
+
+                long waitNanos = Math.min(quietNanos - since, deadline - now);
+                try {
+                    lock.wait(Math.max(1, waitNanos / 1000000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+}
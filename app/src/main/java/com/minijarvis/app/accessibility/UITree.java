@@ -0,0 +1,391 @@
+package com.minijarvis.app.accessibility;
+
+import android.util.Log;
+
+import com.minijarvis.app.model.UIStructure;
+
+/**
+ * UI extraction and label lookups over the node tree of the active window,
+ * independent of where the nodes come from. MiniJarvisAccessibilityService
+ * drives it with live nodes; benchmarks drive it with recorded trees.
+ */
+public class UITree {
+    private static final String TAG = "UITree";
+
+    /**
+     * Supplies the root of the active window, as a node the caller owns
+     */
+    public interface RootSource {
+        UINode getRootInActiveWindow();
+    }
+
+    private final RootSource rootSource;
+    private final UITreeSnapshot snapshot = new UITreeSnapshot();
+
+    public UITree(RootSource rootSource) {
+        this.rootSource = rootSource;
+    }
+
+    /**
+     * Walk the active window and extract its UI structure
+     */
+    public UIStructure extractCurrentUI() {
+        try {
+            if (!rebuildSnapshot()) {
+                return null;
+            }
+            UIStructure uiStructure = snapshot.toUIStructure();
+            // Build the fuzzy target index with the extraction, off the action path.
+            // Not done for dispatcher updates, which run on the main thread.
+            if (uiStructure != null) {
+                uiStructure.getTargetResolver();
+            }
+            return uiStructure;
+        } catch (Exception e) {
+            Log.e(TAG, "Error extracting UI structure", e);
+            return null;
+        }
+    }
+
+    /**
+     * UI structure of the cached tree, without walking the window
+     */
+    public UIStructure getCachedUI() {
+        return snapshot.toUIStructure();
+    }
+
+    /**
+     * Full walk of the active window into the snapshot
+     */
+    public boolean rebuildSnapshot() {
+        UINode rootNode = rootSource.getRootInActiveWindow();
+        if (rootNode == null) {
+            return false;
+        }
+        // The snapshot keeps rootNode, it is recycled on the next rebuild
+        snapshot.rebuild(rootNode, getCurrentAppName(rootNode));
+        return true;
+    }
+
+    /**
+     * Re-walk only the subtree that an event reported as changed. Takes
+     * ownership of source.
+     *
+     * @return true if the cached tree changed
+     */
+    public boolean updateSnapshot(UINode source) {
+        try {
+            if (source == null) {
+                return false;
+            }
+            if (snapshot.isEmpty()) {
+                source.recycle();
+                return rebuildSnapshot();
+            }
+            if (source.getWindowId() != snapshot.getWindowId()) {
+                // Changes in other windows (IME, system UI) are not part of the structure
+                source.recycle();
+                return false;
+            }
+            if (snapshot.update(source)) {
+                return true;
+            }
+            // Source is in the active window but outside the cached tree
+            return rebuildSnapshot();
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating UI snapshot", e);
+            return false;
+        }
+    }
+
+    /**
+     * Release all cached nodes
+     */
+    public void clear() {
+        snapshot.clear();
+    }
+
+    /**
+     * Click the element labelled targetLabel
+     *
+     * @return true if a matching node accepted the click
+     */
+    public boolean performClick(String targetLabel) {
+        try {
+            // Resolve through the snapshot index, search only if the handle is stale
+            boolean found = false;
+            boolean clicked = false;
+            UINode indexed = snapshot.findClickable(targetLabel);
+            if (indexed != null) {
+                if (isCurrent(indexed, targetLabel)) {
+                    found = true;
+                    clicked = indexed.click();
+                }
+                indexed.recycle();
+            }
+            
+            if (!found) {
+                UINode rootNode = rootSource.getRootInActiveWindow();
+                if (rootNode == null) {
+                    Log.w(TAG, "No root node available for click");
+                    return false;
+                }
+                
+                clicked = clickNodeRecursively(rootNode, targetLabel);
+                rootNode.recycle();
+            }
+            
+            if (clicked) {
+                Log.i(TAG, "Successfully clicked: " + targetLabel);
+            } else {
+                Log.w(TAG, "Failed to click: " + targetLabel);
+            }
+            return clicked;
+        } catch (Exception e) {
+            Log.e(TAG, "Error performing click", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replace the text of the field labelled targetLabel
+     *
+     * @return true if a matching field accepted the text
+     */
+    public boolean performType(String targetLabel, String text) {
+        try {
+            // Resolve through the snapshot index, search only if the handle is stale
+            boolean found = false;
+            boolean typed = false;
+            UINode indexed = snapshot.findTextField(targetLabel);
+            if (indexed != null) {
+                if (isCurrent(indexed, targetLabel)) {
+                    found = true;
+                    typed = setNodeText(indexed, text);
+                }
+                indexed.recycle();
+            }
+            
+            if (!found) {
+                UINode rootNode = rootSource.getRootInActiveWindow();
+                if (rootNode == null) {
+                    Log.w(TAG, "No root node available for type");
+                    return false;
+                }
+                
+                typed = typeNodeRecursively(rootNode, targetLabel, text);
+                rootNode.recycle();
+            }
+            
+            if (typed) {
+                Log.i(TAG, "Successfully typed in: " + targetLabel);
+            } else {
+                Log.w(TAG, "Failed to type in: " + targetLabel);
+            }
+            return typed;
+        } catch (Exception e) {
+            Log.e(TAG, "Error performing type", e);
+            return false;
+        }
+    }
+
+    /**
+     * Scroll the first scrollable container "forward" or "backward"
+     *
+     * @return true if something scrolled
+     */
+    public boolean performScroll(String direction) {
+        try {
+            UINode rootNode = rootSource.getRootInActiveWindow();
+            if (rootNode == null) {
+                Log.w(TAG, "No root node available for scroll");
+                return false;
+            }
+            
+            boolean scrolled = scrollNode(rootNode, direction);
+            rootNode.recycle();
+            
+            if (scrolled) {
+                Log.i(TAG, "Successfully scrolled: " + direction);
+            } else {
+                Log.w(TAG, "Failed to scroll: " + direction);
+            }
+            return scrolled;
+        } catch (Exception e) {
+            Log.e(TAG, "Error performing scroll", e);
+            return false;
+        }
+    }
+
+    static String getNodeLabel(UINode node) {
+        if (node == null) {
+            return "";
+        }
+        
+        CharSequence text = node.getText();
+        CharSequence contentDesc = node.getContentDescription();
+        CharSequence viewName = node.getViewIdResourceName();
+        
+        // Priority: text > contentDescription > viewId
+        if (text != null && !text.toString().trim().isEmpty()) {
+            return text.toString().trim();
+        }
+        
+        if (contentDesc != null && !contentDesc.toString().trim().isEmpty()) {
+            return contentDesc.toString().trim();
+        }
+        
+        if (viewName != null) {
+            return viewName.toString().replaceAll(".*:id/", "");
+        }
+        
+        return "";
+    }
+    
+    private static String getCurrentAppName(UINode rootNode) {
+        try {
+            String packageName = rootNode.getPackageName().toString();
+            if (packageName.contains(".")) {
+                return packageName.substring(packageName.lastIndexOf('.') + 1);
+            }
+            return packageName;
+        } catch (Exception e) {
+            return "Unknown";
+        }
+    }
+    
+    static boolean isClickable(UINode node) {
+        return node.isClickable() || node.hasClickAction();
+    }
+    
+    static boolean isButton(UINode node) {
+        String className = node.getClassName().toString().toLowerCase();
+        return className.contains("button") || 
+               className.contains("imagebutton") || 
+               className.contains("fab");
+    }
+    
+    static boolean isMenuItem(UINode node) {
+        String className = node.getClassName().toString().toLowerCase();
+        return className.contains("menuitem") || 
+               className.contains("navigationitem");
+    }
+    
+    static boolean isTextField(UINode node) {
+        String className = node.getClassName().toString().toLowerCase();
+        boolean isEditText = className.contains("edittext") || 
+                           className.contains("textview") && node.isEditable();
+        boolean hasInputType = (node.getInputType() & 0x20000) != 0; // TYPE_CLASS_TEXT
+        
+        return isEditText || hasInputType || node.isEditable();
+    }
+    
+    static boolean isSystemElement(String label) {
+        String lowerLabel = label.toLowerCase();
+        return lowerLabel.contains("android") || 
+               lowerLabel.contains("system") || 
+               lowerLabel.startsWith("android.") ||
+               lowerLabel.startsWith("com.android.") ||
+               lowerLabel.startsWith("com.google.android.");
+    }
+    
+    private boolean clickNodeRecursively(UINode node, String targetLabel) {
+        if (node == null) {
+            return false;
+        }
+        
+        String nodeLabel = getNodeLabel(node);
+        
+        // Check if this node matches the target
+        // A matching node that refuses the click leaves the search to the next match
+        if (nodeLabel.equals(targetLabel) && isClickable(node) && node.click()) {
+            return true;
+        }
+        
+        // Check children
+        for (int i = 0; i < node.getChildCount(); i++) {
+            UINode child = node.getChild(i);
+            if (child != null) {
+                if (clickNodeRecursively(child, targetLabel)) {
+                    child.recycle();
+                    return true;
+                }
+                child.recycle();
+            }
+        }
+        
+        return false;
+    }
+    
+    private boolean typeNodeRecursively(UINode node, String targetLabel, String text) {
+        if (node == null) {
+            return false;
+        }
+        
+        String nodeLabel = getNodeLabel(node);
+        
+        // Check if this node matches the target
+        if (nodeLabel.equals(targetLabel) && (isTextField(node) || node.isEditable())
+                && setNodeText(node, text)) {
+            return true;
+        }
+        
+        // Check children
+        for (int i = 0; i < node.getChildCount(); i++) {
+            UINode child = node.getChild(i);
+            if (child != null) {
+                if (typeNodeRecursively(child, targetLabel, text)) {
+                    child.recycle();
+                    return true;
+                }
+                child.recycle();
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * @return whether the node accepted the text
+     */
+    private boolean setNodeText(UINode node, String text) {
+        // Clear existing text
+        node.focus();
+        node.clearFocus();
+        
+        // Set new text
+        return node.setText(text);
+    }
+    
+    /**
+     * Check that an indexed node still exists and still carries its label
+     */
+    private boolean isCurrent(UINode node, String targetLabel) {
+        if (!node.refresh()) {
+            return false;
+        }
+        String label = getNodeLabel(node);
+        // Unlabeled fields are indexed under their generated text_field_N name
+        return label.equals(targetLabel) || (label.isEmpty() && targetLabel.startsWith("text_field_"));
+    }
+    
+    /**
+     * Scroll the first scrollable node in depth-first order, the root included
+     */
+    private boolean scrollNode(UINode node, String direction) {
+        if (node.isScrollable()) {
+            return direction.equals("forward") ? node.scrollForward() : node.scrollBackward();
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            UINode child = node.getChild(i);
+            if (child != null) {
+                boolean scrolled = scrollNode(child, direction);
+                child.recycle();
+                if (scrolled) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
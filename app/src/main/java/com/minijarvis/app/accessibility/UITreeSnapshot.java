@@ -0,0 +1,262 @@
+package com.minijarvis.app.accessibility;
+
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cached accessibility tree of the active window, keyed by node identity.
+ * A full walk is only needed when the window changes; content changes
+ * re-walk just the subtree of the event source. Each version of the tree
+ * also carries a label index so actions resolve their target node without
+ * another walk.
+ */
+class UITreeSnapshot {
+    // Max ancestors to climb when an event source is not cached yet
+    private static final int MAX_PARENT_HOPS = 8;
+
+    private static class Entry {
+        UINode node;
+        Entry parent;
+        final List<Entry> children = new ArrayList<>();
+        String label;
+        boolean clickable;
+        boolean textField;
+        boolean actionClickable;
+        boolean editable;
+    }
+
+    // UINode equality is by node, not handle
+    private final Map<UINode, Entry> entries = new HashMap<>();
+    private Entry root;
+    private String appName = "";
+    private String focused = "";
+
+    // Bumped on every change; structure and label index are rebuilt lazily
+    private int version = 0;
+    private int indexedVersion = -1;
+    private UIStructure structure;
+    private final Map<String, Entry> clickIndex = new HashMap<>();
+    private final Map<String, Entry> fieldIndex = new HashMap<>();
+
+    /**
+     * Discard the cache and walk the whole tree from a new root
+     */
+    synchronized void rebuild(UINode rootNode, String appName) {
+        clear();
+        this.appName = appName;
+        root = walk(rootNode, null);
+        refreshFocus();
+        version++;
+    }
+
+    /**
+     * Re-walk the subtree rooted at an event source. Takes ownership of source.
+     *
+     * @return false if the source could not be tied to the cached tree and a
+     *         full rebuild is needed
+     */
+    synchronized boolean update(UINode source) {
+        if (root == null || source.getWindowId() != root.node.getWindowId()) {
+            source.recycle();
+            return false;
+        }
+
+        // New nodes are not cached yet; re-walk from the nearest cached ancestor
+        UINode node = source;
+        Entry entry = entries.get(node);
+        for (int hops = 0; entry == null && hops < MAX_PARENT_HOPS; hops++) {
+            UINode parent = node.getParent();
+            if (node != source) {
+                node.recycle();
+            }
+            if (parent == null) {
+                source.recycle();
+                return false;
+            }
+            node = parent;
+            entry = entries.get(node);
+        }
+        if (node != source) {
+            source.recycle();
+        }
+        if (entry == null) {
+            node.recycle();
+            return false;
+        }
+
+        Entry parent = entry.parent;
+        int position = parent != null ? parent.children.indexOf(entry) : -1;
+        remove(entry);
+        Entry fresh = walk(node, parent);
+        if (parent == null) {
+            root = fresh;
+        } else if (fresh != null) {
+            parent.children.set(position, fresh);
+        } else {
+            parent.children.remove(position);
+        }
+        refreshFocus();
+        version++;
+        return root != null;
+    }
+
+    synchronized boolean isEmpty() {
+        return root == null;
+    }
+
+    synchronized int getWindowId() {
+        return root != null ? root.node.getWindowId() : -1;
+    }
+
+    /**
+     * Build the UIStructure from the cached tree without touching the binder
+     */
+    synchronized UIStructure toUIStructure() {
+        ensureIndexed();
+        return structure;
+    }
+
+    /**
+     * Node that a click on label should target, as a copy the caller recycles.
+     * The handle may be stale if the UI changed after this snapshot.
+     */
+    synchronized UINode findClickable(String label) {
+        ensureIndexed();
+        return obtain(clickIndex.get(label));
+    }
+
+    /**
+     * Editable node for a text field label, as a copy the caller recycles
+     */
+    synchronized UINode findTextField(String label) {
+        ensureIndexed();
+        return obtain(fieldIndex.get(label));
+    }
+
+    /**
+     * Release all cached nodes
+     */
+    synchronized void clear() {
+        for (UINode node : entries.keySet()) {
+            node.recycle();
+        }
+        entries.clear();
+        root = null;
+        focused = "";
+        version++;
+    }
+
+    private Entry walk(UINode node, Entry parent) {
+        if (node == null) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.node = node;
+        entry.parent = parent;
+        entry.label = UITree.getNodeLabel(node);
+
+        // Only visible nodes contribute to the structure
+        if (node.isVisibleToUser()) {
+            entry.clickable = (UITree.isClickable(node)
+                    || UITree.isButton(node)
+                    || UITree.isMenuItem(node))
+                    && !entry.label.isEmpty()
+                    && !UITree.isSystemElement(entry.label);
+            entry.textField = UITree.isTextField(node);
+        }
+        entry.actionClickable = UITree.isClickable(node);
+        entry.editable = UITree.isTextField(node);
+
+        entries.put(node, entry);
+
+        for (int i = 0; i < node.getChildCount(); i++) {
+            Entry child = walk(node.getChild(i), entry);
+            if (child != null) {
+                entry.children.add(child);
+            }
+        }
+        return entry;
+    }
+
+    private void remove(Entry entry) {
+        for (Entry child : entry.children) {
+            remove(child);
+        }
+        if (entries.get(entry.node) == entry) {
+            entries.remove(entry.node);
+        }
+        entry.node.recycle();
+    }
+
+    private void ensureIndexed() {
+        if (indexedVersion == version) {
+            return;
+        }
+        indexedVersion = version;
+        clickIndex.clear();
+        fieldIndex.clear();
+        if (root == null) {
+            structure = null;
+            return;
+        }
+
+        Set<String> clickableSet = new HashSet<>();
+        Set<String> textFieldsSet = new HashSet<>();
+        collect(root, clickableSet, textFieldsSet);
+
+        String[] clickable = clickableSet.toArray(new String[0]);
+        String[] textFields = textFieldsSet.toArray(new String[0]);
+        Arrays.sort(clickable);
+        Arrays.sort(textFields);
+
+        structure = new UIStructure(appName, clickable, textFields, focused);
+    }
+
+    private void collect(Entry entry, Set<String> clickableSet, Set<String> textFieldsSet) {
+        if (entry.clickable) {
+            clickableSet.add(entry.label);
+        }
+        if (entry.textField) {
+            String name = entry.label;
+            if (name.isEmpty()) {
+                name = "text_field_" + textFieldsSet.size();
+            }
+            textFieldsSet.add(name);
+            if (entry.editable && !fieldIndex.containsKey(name)) {
+                fieldIndex.put(name, entry);
+            }
+        } else if (entry.editable && !entry.label.isEmpty() && !fieldIndex.containsKey(entry.label)) {
+            fieldIndex.put(entry.label, entry);
+        }
+        // First match in tree order wins, like the recursive search
+        if (entry.actionClickable && !entry.label.isEmpty() && !clickIndex.containsKey(entry.label)) {
+            clickIndex.put(entry.label, entry);
+        }
+        for (Entry child : entry.children) {
+            collect(child, clickableSet, textFieldsSet);
+        }
+    }
+
+    private static UINode obtain(Entry entry) {
+        return entry != null ? entry.node.copy() : null;
+    }
+
+    private void refreshFocus() {
+        focused = "";
+        if (root == null) {
+            return;
+        }
+        UINode focusedNode = root.node.findAccessibilityFocus();
+        if (focusedNode != null) {
+            focused = UITree.getNodeLabel(focusedNode);
+            focusedNode.recycle();
+        }
+    }
+}
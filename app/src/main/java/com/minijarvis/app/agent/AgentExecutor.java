@@ -0,0 +1,287 @@
+package com.minijarvis.app.agent;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.minijarvis.app.accessibility.MiniJarvisAccessibilityService;
+import com.minijarvis.app.llm.ActionCache;
+import com.minijarvis.app.llm.ModelNotReadyException;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.ActionExecutor;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the instruction -> inference -> execution pipeline off the main thread.
+ * The AgentLoop (UI extraction and action execution) runs on a dedicated
+ * executor thread, inference on a single inference worker. Only listener
+ * callbacks are posted back to the main looper.
+ */
+public class AgentExecutor {
+    private static final String TAG = "AgentExecutor";
+
+    /**
+     * Produces the next action for a screen
+     */
+    public interface ActionGenerator {
+        ActionModel generateAction(String instruction, UIStructure uiStructure, List<ActionModel> history);
+    }
+
+    /**
+     * Progress callbacks, always invoked on the main thread
+     */
+    public interface Listener {
+        void onStatus(String status);
+        void onLog(String message);
+        void onUIStructure(UIStructure uiStructure);
+        void onAction(ActionModel action);
+        void onFinished(AgentLoop.Result result);
+    }
+
+    /**
+     * Stops the loop when its first action repeats the previous run's
+     */
+    private static class ThrottledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ThrottledException() {
+            super("Action throttled (duplicate)");
+        }
+    }
+
+    private final ActionGenerator generator;
+    private final Runnable cancelHook;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService actionThread = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "MiniJarvis-Actions"));
+    private final ExecutorService inferenceThread = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "MiniJarvis-Inference"));
+    private final ActionExecutor.ActionTracker actionTracker = new ActionExecutor.ActionTracker();
+
+    // Reused across runs while the accessibility service instance stays the same
+    private ActionExecutor actionExecutor;
+
+    private volatile Future<?> currentTask;
+    private volatile Future<ActionModel> currentInference;
+    private volatile boolean cancelled = false;
+    private volatile int maxSteps = AgentLoop.DEFAULT_MAX_STEPS;
+    private volatile long maxDurationMs = AgentLoop.DEFAULT_MAX_DURATION_MS;
+    private volatile ActionCache actionCache;
+    private volatile MacroStore macroStore;
+
+    /**
+     * @param generator  Inference backend, called on the inference worker
+     * @param cancelHook Aborts an in-flight generation mid-decode, may be null
+     */
+    public AgentExecutor(ActionGenerator generator, Runnable cancelHook) {
+        this.generator = generator;
+        this.cancelHook = cancelHook;
+    }
+
+    /**
+     * Step and time budget for each instruction
+     */
+    public void setBudget(int maxSteps, long maxDurationMs) {
+        this.maxSteps = maxSteps;
+        this.maxDurationMs = maxDurationMs;
+    }
+
+    /**
+     * Cache consulted before inference, may be null to always run the engine
+     */
+    public void setActionCache(ActionCache actionCache) {
+        this.actionCache = actionCache;
+    }
+
+    /**
+     * Macro recordings to replay before consulting the engine, may be null
+     */
+    public void setMacroStore(MacroStore macroStore) {
+        this.macroStore = macroStore;
+    }
+
+    /**
+     * Whether a pipeline run is in progress
+     */
+    public boolean isBusy() {
+        Future<?> task = currentTask;
+        return task != null && !task.isDone();
+    }
+
+    /**
+     * Start processing an instruction
+     *
+     * @return false if a previous instruction is still running
+     */
+    public boolean process(String instruction, Listener listener) {
+        if (isBusy()) {
+            return false;
+        }
+        cancelled = false;
+        currentTask = actionThread.submit(() -> runPipeline(instruction, listener));
+        return true;
+    }
+
+    /**
+     * Abort the running pipeline, including a generation in progress
+     */
+    public void cancel() {
+        cancelled = true;
+        if (cancelHook != null) {
+            cancelHook.run();
+        }
+        Future<ActionModel> inference = currentInference;
+        if (inference != null) {
+            inference.cancel(true);
+        }
+        Future<?> task = currentTask;
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel work and stop both threads
+     */
+    public void shutdown() {
+        cancel();
+        actionThread.shutdownNow();
+        inferenceThread.shutdownNow();
+    }
+
+    private void runPipeline(String instruction, Listener listener) {
+        try {
+            status(listener, "Processing...");
+            
+            // Get accessibility service instance (may have changed)
+            MiniJarvisAccessibilityService accessibilityService = MiniJarvisAccessibilityService.getInstance();
+            if (accessibilityService == null) {
+                fail(listener, "Accessibility service not available");
+                return;
+            }
+            
+            AgentLoop loop = new AgentLoop(this::decide, accessibilityService,
+                    getActionExecutor(accessibilityService))
+                    .setBudget(maxSteps, maxDurationMs)
+                    .setActionCache(actionCache)
+                    .setMacroStore(macroStore);
+            
+            AgentLoop.Result result = loop.run(instruction, new AgentLoop.StepListener() {
+                private boolean first = true;
+                
+                @Override
+                public void onObserved(UIStructure uiStructure) {
+                    mainHandler.post(() -> listener.onUIStructure(uiStructure));
+                }
+                
+                @Override
+                public void onDecided(ActionModel action) {
+                    mainHandler.post(() -> listener.onAction(action));
+                    log(listener, "Generated action: " + action);
+                    // Guard against re-running the same instruction twice in a row
+                    if (first && actionTracker.shouldThrottle(action.action, action.target, action.text)) {
+                        throw new ThrottledException();
+                    }
+                    first = false;
+                    actionTracker.recordAction(action.action, action.target, action.text);
+                }
+                
+                @Override
+                public void onStep(AgentLoop.StepResult step) {
+                    log(listener, "Step " + step.index + (step.success ? " done: " : " failed: ") +
+                            step.action + " (" + step.source + " " + step.inferenceMs + " ms" +
+                            ", execution " + step.executionMs + " ms)");
+                }
+            });
+            
+            if (cancelled) {
+                stopped(listener);
+                return;
+            }
+            log(listener, String.format(Locale.US, "%d step(s) in %d ms (%.1f steps/min): %s",
+                    result.steps.size(), result.durationMs, result.getStepsPerMinute(), result.stopReason));
+            status(listener, result.isSuccess() ? "Done" : "Stopped: " + result.stopReason);
+            mainHandler.post(() -> listener.onFinished(result));
+        } catch (InterruptedException | CancellationException e) {
+            stopped(listener);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error generating action", e.getCause());
+            fail(listener, "Error: " + e.getCause().getMessage());
+        } catch (ThrottledException e) {
+            log(listener, e.getMessage());
+            status(listener, "Ready");
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing instruction", e);
+            fail(listener, "Error: " + e.getMessage());
+        } finally {
+            currentInference = null;
+            ActionCache cache = actionCache;
+            if (cache != null) {
+                cache.save();
+                Log.i(TAG, "Action cache: " + cache.getHits() + " hits, " + cache.getMisses() +
+                        " misses, " + cache.getEvictions() + " evictions");
+            }
+        }
+    }
+
+    /**
+     * Only called on the action thread
+     */
+    private ActionExecutor getActionExecutor(MiniJarvisAccessibilityService accessibilityService) {
+        if (actionExecutor == null || !actionExecutor.isBoundTo(accessibilityService)) {
+            actionExecutor = new ActionExecutor(accessibilityService);
+        }
+        return actionExecutor;
+    }
+
+    /**
+     * Run one decision on the inference worker and wait for it
+     */
+    private ActionModel decide(String instruction, UIStructure uiStructure, List<ActionModel> history)
+            throws InterruptedException, ExecutionException {
+        Future<ActionModel> inference = inferenceThread.submit(
+                () -> generator.generateAction(instruction, uiStructure, history));
+        currentInference = inference;
+        try {
+            ActionModel action = inference.get();
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return action;
+        } catch (ExecutionException e) {
+            // AgentLoop stops on this one instead of reporting an error
+            if (e.getCause() instanceof ModelNotReadyException) {
+                throw (ModelNotReadyException) e.getCause();
+            }
+            throw e;
+        } finally {
+            currentInference = null;
+        }
+    }
+
+    private void status(Listener listener, String status) {
+        mainHandler.post(() -> listener.onStatus(status));
+    }
+
+    private void log(Listener listener, String message) {
+        mainHandler.post(() -> listener.onLog(message));
+    }
+
+    private void fail(Listener listener, String message) {
+        log(listener, message);
+        status(listener, "Error");
+    }
+
+    private void stopped(Listener listener) {
+        log(listener, "Stopped by user");
+        status(listener, "Stopped");
+    }
+}
@@ -0,0 +1,281 @@
+package com.minijarvis.app.agent;
+
+import android.util.Log;
+
+import com.minijarvis.app.accessibility.UIController;
+import com.minijarvis.app.llm.ActionCache;
+import com.minijarvis.app.llm.ModelNotReadyException;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.ActionExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Observe -> decide -> act -> settle loop for multi-step instructions.
+ * Runs until the engine returns ACTION_NOTHING or the step or time budget
+ * is spent, feeding the actions taken so far back into each decision.
+ */
+public class AgentLoop {
+    public static final int DEFAULT_MAX_STEPS = 10;
+    public static final long DEFAULT_MAX_DURATION_MS = 60000;
+
+    public static final String STOP_DONE = "done";
+    public static final String STOP_STEP_BUDGET = "step budget exhausted";
+    public static final String STOP_TIME_BUDGET = "time budget exhausted";
+    public static final String STOP_NO_UI = "no UI structure";
+    public static final String STOP_INVALID_ACTION = "invalid action";
+    public static final String STOP_ACTION_FAILED = "action failed";
+    public static final String STOP_NO_PROGRESS = "no progress";
+    public static final String STOP_MODEL_NOT_READY = "model not ready";
+
+    public static final String SOURCE_MODEL = "model";
+    public static final String SOURCE_CACHE = "cache";
+    public static final String SOURCE_MACRO = "macro";
+
+    private static final String TAG = "AgentLoop";
+
+    /**
+     * Picks the next action; implementations may block on an inference
+     * worker, and throw ModelNotReadyException to end the run untaken
+     */
+    public interface Decider {
+        ActionModel decide(String instruction, UIStructure uiStructure, List<ActionModel> history)
+                throws Exception;
+    }
+
+    /**
+     * Per-step callbacks, invoked on the loop thread
+     */
+    public interface StepListener {
+        void onObserved(UIStructure uiStructure);
+        void onDecided(ActionModel action);
+        void onStep(StepResult step);
+    }
+
+    /**
+     * Timing of one executed step
+     */
+    public static class StepResult {
+        public final int index;
+        public final ActionModel action;
+        public final long inferenceMs;
+        public final long executionMs;
+        public final boolean success;
+        // One of the SOURCE_* constants
+        public final String source;
+
+        StepResult(int index, ActionModel action, long inferenceMs, long executionMs,
+                   boolean success, String source) {
+            this.index = index;
+            this.action = action;
+            this.inferenceMs = inferenceMs;
+            this.executionMs = executionMs;
+            this.success = success;
+            this.source = source;
+        }
+
+        public long getLatencyMs() {
+            return inferenceMs + executionMs;
+        }
+    }
+
+    /**
+     * Outcome of a whole run
+     */
+    public static class Result {
+        public final List<StepResult> steps;
+        public final long durationMs;
+        public final String stopReason;
+
+        Result(List<StepResult> steps, long durationMs, String stopReason) {
+            this.steps = Collections.unmodifiableList(steps);
+            this.durationMs = durationMs;
+            this.stopReason = stopReason;
+        }
+
+        public boolean isSuccess() {
+            return STOP_DONE.equals(stopReason);
+        }
+
+        public double getStepsPerMinute() {
+            return durationMs > 0 ? steps.size() * 60000.0 / durationMs : 0;
+        }
+    }
+
+    private final Decider decider;
+    private final UIController uiController;
+    private final ActionExecutor actionExecutor;
+    private int maxSteps = DEFAULT_MAX_STEPS;
+    private long maxDurationMs = DEFAULT_MAX_DURATION_MS;
+    private ActionCache actionCache;
+    private MacroStore macroStore;
+
+    public AgentLoop(Decider decider, UIController uiController, ActionExecutor actionExecutor) {
+        this.decider = decider;
+        this.uiController = uiController;
+        this.actionExecutor = actionExecutor;
+    }
+
+    public AgentLoop setBudget(int maxSteps, long maxDurationMs) {
+        this.maxSteps = maxSteps;
+        this.maxDurationMs = maxDurationMs;
+        return this;
+    }
+
+    /**
+     * Serve repeated instructions on known screens from the cache, may be null
+     */
+    public AgentLoop setActionCache(ActionCache actionCache) {
+        this.actionCache = actionCache;
+        return this;
+    }
+
+    /**
+     * Replay and record macros, may be null
+     */
+    public AgentLoop setMacroStore(MacroStore macroStore) {
+        this.macroStore = macroStore;
+        return this;
+    }
+
+    /**
+     * Run the instruction to completion or until a budget runs out.
+     * A recorded macro is replayed while the live screen matches it; the
+     * decider is consulted only from the first step that diverges, and a
+     * completed run that needed it is recorded as the new macro.
+     * Interruption of the calling thread aborts the run.
+     */
+    public Result run(String instruction, StepListener listener) throws Exception {
+        long start = System.currentTimeMillis();
+        List<StepResult> steps = new ArrayList<>();
+        List<ActionModel> history = new ArrayList<>();
+        UIStructure previousUI = null;
+        String stopReason = STOP_STEP_BUDGET;
+
+        Macro macro = macroStore != null ? macroStore.find(instruction) : null;
+        boolean replaying = macro != null;
+        List<Long> fingerprints = new ArrayList<>();
+
+        while (steps.size() < maxSteps) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.currentTimeMillis() - start >= maxDurationMs) {
+                stopReason = STOP_TIME_BUDGET;
+                break;
+            }
+
+            // Observe
+            UIStructure uiStructure = uiController.extractCurrentUI();
+            if (uiStructure == null) {
+                stopReason = STOP_NO_UI;
+                break;
+            }
+            listener.onObserved(uiStructure);
+
+            // Decide: recorded macro, then cached action, then the model
+            long inferenceStart = System.currentTimeMillis();
+            long fingerprint = uiStructure.fingerprint();
+            ActionModel action = null;
+            String source = SOURCE_MODEL;
+            if (replaying) {
+                action = replay(macro, steps.size(), fingerprint);
+                if (action != null) {
+                    source = SOURCE_MACRO;
+                } else {
+                    Log.i(TAG, "Screen diverged from macro at step " + (steps.size() + 1));
+                    replaying = false;
+                }
+            }
+            if (action == null && actionCache != null) {
+                action = actionCache.get(instruction, uiStructure);
+                if (action != null) {
+                    source = SOURCE_CACHE;
+                }
+            }
+            if (action == null) {
+                try {
+                    action = decider.decide(instruction, uiStructure, history);
+                } catch (ModelNotReadyException e) {
+                    // Nothing decided, so nothing to cache or record
+                    stopReason = STOP_MODEL_NOT_READY;
+                    break;
+                }
+            }
+            long inferenceMs = System.currentTimeMillis() - inferenceStart;
+            if (action == null || !action.isValid()) {
+                stopReason = STOP_INVALID_ACTION;
+                break;
+            }
+            listener.onDecided(action);
+            if (ActionModel.ACTION_NOTHING.equals(action.action)) {
+                // Only a completion reached after real steps is worth remembering
+                if (!history.isEmpty()) {
+                    if (actionCache != null && SOURCE_MODEL.equals(source)) {
+                        actionCache.put(instruction, uiStructure, action);
+                    }
+                    if (macroStore != null && !SOURCE_MACRO.equals(source)) {
+                        macroStore.save(new Macro(instruction, fingerprints, history, fingerprint));
+                    }
+                }
+                stopReason = STOP_DONE;
+                break;
+            }
+
+            // Repeating the last action on an unchanged screen will not get anywhere
+            if (!history.isEmpty() && action.equals(history.get(history.size() - 1))
+                    && uiStructure.equals(previousUI)) {
+                stopReason = STOP_NO_PROGRESS;
+                break;
+            }
+
+            // Act, then wait for the UI to settle (inside executeAction)
+            long executionStart = System.currentTimeMillis();
+            boolean success = actionExecutor.executeAction(action, uiStructure);
+            long executionMs = System.currentTimeMillis() - executionStart;
+
+            if (!success && SOURCE_MACRO.equals(source)) {
+                macroStore.delete(instruction);
+            }
+            if (actionCache != null) {
+                if (!success) {
+                    actionCache.invalidate(instruction, uiStructure);
+                } else if (SOURCE_MODEL.equals(source)) {
+                    actionCache.put(instruction, uiStructure, action);
+                }
+            }
+
+            StepResult step = new StepResult(steps.size() + 1, action, inferenceMs, executionMs,
+                    success, source);
+            steps.add(step);
+            history.add(action);
+            fingerprints.add(fingerprint);
+            previousUI = uiStructure;
+            listener.onStep(step);
+
+            if (!success) {
+                stopReason = STOP_ACTION_FAILED;
+                break;
+            }
+        }
+
+        return new Result(steps, System.currentTimeMillis() - start, stopReason);
+    }
+
+    /**
+     * Recorded action for a step if the live screen still matches the
+     * recording, ACTION_NOTHING once the recorded end screen is reached
+     */
+    private static ActionModel replay(Macro macro, int step, long fingerprint) {
+        if (step < macro.size()) {
+            return macro.fingerprintAt(step) == fingerprint ? macro.actionAt(step) : null;
+        }
+        if (step == macro.size() && macro.getFinalFingerprint() == fingerprint) {
+            return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+        }
+        return null;
+    }
+}
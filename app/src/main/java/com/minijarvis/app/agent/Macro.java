@@ -0,0 +1,154 @@
+package com.minijarvis.app.agent;
+
+import com.minijarvis.app.model.ActionModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Recorded sequence of actions with the fingerprint of the screen seen
+ * before each one, plus the fingerprint of the screen the task finished on.
+ *
+ * <p>Binary layout, big-endian:
+ * <pre>
+ * int    magic "MJM1"
+ * string instruction
+ * int    step count N
+ * N x { long fingerprint, string action, string target, string text }
+ * long   final fingerprint
+ * </pre>
+ * Strings are an unsigned short byte length followed by UTF-8 bytes.
+ */
+public class Macro {
+    private static final int MAGIC = 0x4d4a4d31;
+    private static final int MAX_STRING_BYTES = 0xffff;
+
+    private final String instruction;
+    private final long[] fingerprints;
+    private final ActionModel[] actions;
+    private final long finalFingerprint;
+
+    public Macro(String instruction, long[] fingerprints, ActionModel[] actions, long finalFingerprint) {
+        if (fingerprints.length != actions.length) {
+            throw new IllegalArgumentException("Fingerprint and action counts differ");
+        }
+        this.instruction = instruction;
+        this.fingerprints = fingerprints;
+        this.actions = actions;
+        this.finalFingerprint = finalFingerprint;
+    }
+
+    public Macro(String instruction, List<Long> fingerprints, List<ActionModel> actions, long finalFingerprint) {
+        this(instruction, toArray(fingerprints), actions.toArray(new ActionModel[0]), finalFingerprint);
+    }
+
+    public String getInstruction() {
+        return instruction;
+    }
+
+    public int size() {
+        return actions.length;
+    }
+
+    /**
+     * Fingerprint of the screen the step was recorded on
+     */
+    public long fingerprintAt(int step) {
+        return fingerprints[step];
+    }
+
+    /**
+     * Copy of the recorded action for a step
+     */
+    public ActionModel actionAt(int step) {
+        ActionModel action = actions[step];
+        return new ActionModel(action.action, action.target, action.text);
+    }
+
+    public long getFinalFingerprint() {
+        return finalFingerprint;
+    }
+
+    /**
+     * Write the macro to a file
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            writeString(out, instruction);
+            out.writeInt(actions.length);
+            for (int i = 0; i < actions.length; i++) {
+                out.writeLong(fingerprints[i]);
+                writeString(out, actions[i].action);
+                writeString(out, actions[i].target);
+                writeString(out, actions[i].text);
+            }
+            out.writeLong(finalFingerprint);
+        }
+    }
+
+    /**
+     * Read a macro through a read-only memory mapping of the file
+     */
+    public static Macro read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a macro file: " + file.getName());
+                }
+                String instruction = readString(buffer);
+                int count = buffer.getInt();
+                // Each step takes at least 14 bytes, reject counts the file cannot hold
+                if (count < 0 || count > buffer.remaining() / 14) {
+                    throw new IOException("Corrupt macro step count: " + count);
+                }
+                long[] fingerprints = new long[count];
+                ActionModel[] actions = new ActionModel[count];
+                for (int i = 0; i < count; i++) {
+                    fingerprints[i] = buffer.getLong();
+                    actions[i] = new ActionModel(readString(buffer), readString(buffer), readString(buffer));
+                }
+                return new Macro(instruction, fingerprints, actions, buffer.getLong());
+            } catch (RuntimeException e) {
+                // BufferUnderflowException and friends on a truncated file
+                throw new IOException("Corrupt macro file: " + file.getName(), e);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("String too long for macro: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
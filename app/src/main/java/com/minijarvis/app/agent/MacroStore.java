@@ -0,0 +1,106 @@
+package com.minijarvis.app.agent;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.minijarvis.app.llm.ActionCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recorded macros under getFilesDir()/macros, one file per normalized
+ * instruction. Loaded macros are kept in memory after the first read.
+ */
+public class MacroStore {
+    private static final String TAG = "MacroStore";
+    private static final String MACRO_DIR = "macros";
+    private static final String MACRO_EXT = ".macro";
+
+    private final File dir;
+    private final Map<String, Macro> loaded = new HashMap<>();
+
+    public MacroStore(Context context) {
+        this(new File(context.getFilesDir(), MACRO_DIR));
+    }
+
+    public MacroStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Macro recorded for an instruction, or null if there is none
+     */
+    public synchronized Macro find(String instruction) {
+        String key = ActionCache.normalize(instruction);
+        if (loaded.containsKey(key)) {
+            return loaded.get(key);
+        }
+
+        Macro macro = null;
+        File file = fileFor(key);
+        if (file.exists()) {
+            try {
+                macro = Macro.read(file);
+                // File names are hashes, guard against collisions
+                if (!key.equals(ActionCache.normalize(macro.getInstruction()))) {
+                    macro = null;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable macro " + file.getName(), e);
+                file.delete();
+            }
+        }
+        loaded.put(key, macro);
+        return macro;
+    }
+
+    /**
+     * Save a macro, replacing any earlier recording of the same instruction
+     */
+    public synchronized void save(Macro macro) {
+        String key = ActionCache.normalize(macro.getInstruction());
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create macro directory");
+            return;
+        }
+
+        File file = fileFor(key);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            macro.write(tmp);
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Rename failed");
+            }
+            loaded.put(key, macro);
+            Log.i(TAG, "Recorded macro with " + macro.size() + " steps: " + key);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving macro", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Forget the recording for an instruction, e.g. after a replayed step failed
+     */
+    public synchronized void delete(String instruction) {
+        String key = ActionCache.normalize(instruction);
+        loaded.put(key, null);
+        File file = fileFor(key);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete macro " + file.getName());
+        }
+    }
+
+    private File fileFor(String key) {
+        long hash = 0xcbf29ce484222325L;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return new File(dir, Long.toHexString(hash) + MACRO_EXT);
+    }
+}
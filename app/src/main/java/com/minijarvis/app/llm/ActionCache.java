@@ -0,0 +1,220 @@
+package com.minijarvis.app.llm;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LRU cache of validated actions keyed by normalized instruction and
+ * UIStructure fingerprint, so repeated commands on a known screen skip
+ * inference. Persisted as JSON under getFilesDir().
+ */
+public class ActionCache {
+    private static final String TAG = "ActionCache";
+    private static final String CACHE_FILE = "action_cache.json";
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static class Entry {
+        @SerializedName("key")
+        String key;
+
+        @SerializedName("action")
+        ActionModel action;
+
+        Entry(String key, ActionModel action) {
+            this.key = key;
+            this.action = action;
+        }
+    }
+
+    private final File file;
+    private final int maxEntries;
+    private final Gson gson = GsonProvider.get();
+    private final LinkedHashMap<String, ActionModel> entries;
+
+    private boolean loaded = false;
+    private boolean dirty = false;
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+    public ActionCache(Context context) {
+        this(new File(context.getFilesDir(), CACHE_FILE), DEFAULT_MAX_ENTRIES);
+    }
+
+    public ActionCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        // Access order makes iteration order least recently used first
+        this.entries = new LinkedHashMap<String, ActionModel>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ActionModel> eldest) {
+                if (size() > ActionCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cached action for an instruction on this screen, or null on a miss
+     */
+    public synchronized ActionModel get(String instruction, UIStructure uiStructure) {
+        ensureLoaded();
+        ActionModel action = entries.get(key(instruction, uiStructure));
+        if (action == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(action);
+    }
+
+    /**
+     * Remember an action that executed successfully on this screen
+     */
+    public synchronized void put(String instruction, UIStructure uiStructure, ActionModel action) {
+        if (action == null || !action.isValid()) {
+            return;
+        }
+        ensureLoaded();
+        entries.put(key(instruction, uiStructure), copy(action));
+        dirty = true;
+    }
+
+    /**
+     * Drop the entry for an instruction on this screen, e.g. after the
+     * cached action failed to execute
+     */
+    public synchronized void invalidate(String instruction, UIStructure uiStructure) {
+        ensureLoaded();
+        if (entries.remove(key(instruction, uiStructure)) != null) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        loaded = true;
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Write the cache to disk if it changed since the last save
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        List<Entry> list = new ArrayList<>(entries.size());
+        for (Map.Entry<String, ActionModel> entry : entries.entrySet()) {
+            list.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+
+        // Write to a temp file and rename so a crash never leaves a torn cache
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(list, writer);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving action cache", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Error replacing action cache file");
+            tmp.delete();
+            return;
+        }
+        dirty = false;
+    }
+
+    /**
+     * Normalize an instruction so trivially different phrasings share an entry
+     */
+    public static String normalize(String instruction) {
+        if (instruction == null) {
+            return "";
+        }
+        String normalized = instruction.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        int end = normalized.length();
+        while (end > 0 && ".!?".indexOf(normalized.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return normalized.substring(0, end);
+    }
+
+    private static String key(String instruction, UIStructure uiStructure) {
+        return Long.toHexString(uiStructure.fingerprint()) + ' ' + normalize(instruction);
+    }
+
+    private static ActionModel copy(ActionModel action) {
+        return new ActionModel(action.action, action.target, action.text);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Entry[] list = gson.fromJson(reader, Entry[].class);
+            if (list != null) {
+                for (Entry entry : list) {
+                    if (entry != null && entry.key != null && entry.action != null && entry.action.isValid()) {
+                        entries.put(entry.key, entry.action);
+                    }
+                }
+            }
+            Log.i(TAG, "Loaded " + entries.size() + " cached actions");
+        } catch (IOException | JsonParseException e) {
+            Log.w(TAG, "Discarding unreadable action cache", e);
+            file.delete();
+        }
+        // Loading does not count towards evictions
+        evictions = 0;
+    }
+}
@@ -0,0 +1,178 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Builds a GBNF grammar that restricts decoding to the ActionModel schema.
+ * Actions are limited to the ActionModel.ACTION_* constants and targets to
+ * the exact labels present in the current UIStructure or their element
+ * references ("#3") from CompactUIEncoder, so every completed generation
+ * parses into an executable action.
+ */
+public class ActionGrammar {
+
+    private ActionGrammar() {
+    }
+
+    /**
+     * Build the grammar for the given screen
+     */
+    public static String build(CompactUIEncoder.Encoding encoding) {
+        UIStructure uiStructure = encoding.getUIStructure();
+        Set<String> targets = new LinkedHashSet<>();
+        Set<String> fields = new LinkedHashSet<>();
+
+        // Element references are the cheapest answer, exact labels stay valid.
+        // A label that reads like a reference is left to mean the label.
+        for (int number = 1; number <= encoding.size(); number++) {
+            String reference = CompactUIEncoder.reference(number);
+            if (encoding.isLabel(reference)) {
+                continue;
+            }
+            targets.add(reference);
+            if (number >= encoding.firstFieldIndex()) {
+                fields.add(reference);
+            }
+        }
+        addAll(targets, uiStructure.clickable);
+        addAll(targets, uiStructure.textFields);
+        addAll(fields, uiStructure.textFields);
+        if (uiStructure.focused != null && !uiStructure.focused.isEmpty()) {
+            fields.add(uiStructure.focused);
+        }
+
+        StringBuilder body = new StringBuilder();
+        StringBuilder rules = new StringBuilder();
+
+        if (!targets.isEmpty()) {
+            appendAction(body, rules, "click", ActionModel.ACTION_CLICK, "target", "empty");
+            rules.append("target ::= ").append(alternatives(targets)).append('\n');
+        }
+        if (!fields.isEmpty()) {
+            appendAction(body, rules, "type", ActionModel.ACTION_TYPE, "field", "string");
+            rules.append("field ::= ").append(alternatives(fields)).append('\n');
+        }
+        appendAction(body, rules, "scroll", ActionModel.ACTION_SCROLL, "direction", "empty");
+        appendAction(body, rules, "open", ActionModel.ACTION_OPEN_APP, "string", "empty");
+        appendAction(body, rules, "back", ActionModel.ACTION_GO_BACK, "empty", "empty");
+        appendAction(body, rules, "nothing", ActionModel.ACTION_NOTHING, "empty", "empty");
+
+        return "root ::= \"{\" ws " + literal("\"action\"") + " kv body ws \"}\"\n" +
+                "body ::= " + body + "\n" +
+                rules +
+                "direction ::= " + literal("\"forward\"") + " | " + literal("\"backward\"") + "\n" +
+                "empty ::= " + literal("\"\"") + "\n" +
+                "string ::= \"\\\"\" char* \"\\\"\"\n" +
+                "char ::= [^\"\\\\\\x7F\\x00-\\x1F] | \"\\\\\" [\"\\\\/bfnrt]\n" +
+                "kv ::= ws \":\" ws\n" +
+                "sep ::= ws \",\" ws\n" +
+                "ws ::= | \" \" | \"\\n\" [ \\t]{0,20}\n";
+    }
+
+    private static void appendAction(StringBuilder body, StringBuilder rules, String rule,
+                                     String action, String targetRule, String textRule) {
+        if (body.length() > 0) {
+            body.append(" | ");
+        }
+        body.append(rule);
+        rules.append(rule).append(" ::= ")
+                .append(literal(jsonString(action)))
+                .append(" sep ").append(literal("\"target\"")).append(" kv ").append(targetRule)
+                .append(" sep ").append(literal("\"text\"")).append(" kv ").append(textRule)
+                .append('\n');
+    }
+
+    private static void addAll(Set<String> set, String[] values) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                set.add(value);
+            }
+        }
+    }
+
+    private static String alternatives(Set<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(" | ");
+            }
+            sb.append(literal(jsonString(value)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Quote a value the way it must appear in the model's JSON output
+     */
+    static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+
+    /**
+     * Encode text as a GBNF string literal
+     */
+    static String literal(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
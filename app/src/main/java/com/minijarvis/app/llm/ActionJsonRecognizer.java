@@ -0,0 +1,102 @@
+package com.minijarvis.app.llm;
+
+import com.google.gson.Gson;
+import com.minijarvis.app.model.ActionModel;
+
+/**
+ * Incremental recognizer for the action JSON emitted by the model.
+ * Fed token by token, it reports completion as soon as the closing brace
+ * of a top-level object that parses into a valid ActionModel arrives,
+ * so decoding can stop without waiting for MAX_TOKENS.
+ */
+public class ActionJsonRecognizer {
+    private final Gson gson;
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private ActionModel action;
+
+    public ActionJsonRecognizer(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Feed the next piece of generated text
+     *
+     * @return true once a complete ActionModel object has been recognized
+     */
+    public boolean append(CharSequence piece) {
+        if (action != null) {
+            return true;
+        }
+
+        for (int i = 0; i < piece.length(); i++) {
+            char c = piece.charAt(i);
+
+            // Skip any preamble before the first brace
+            if (depth == 0) {
+                if (c != '{') {
+                    continue;
+                }
+                buffer.setLength(0);
+            }
+            buffer.append(c);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0 && completeObject()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The recognized action, or null if no complete object has been seen yet
+     */
+    public ActionModel getAction() {
+        return action;
+    }
+
+    /**
+     * Clear state so the recognizer can be reused for another generation
+     */
+    public void reset() {
+        buffer.setLength(0);
+        depth = 0;
+        inString = false;
+        escaped = false;
+        action = null;
+    }
+
+    private boolean completeObject() {
+        try {
+            ActionModel parsed = gson.fromJson(buffer.toString(), ActionModel.class);
+            if (parsed != null && parsed.isValid()) {
+                action = parsed;
+                return true;
+            }
+        } catch (Exception e) {
+            // Not a well-formed action object, keep scanning
+        }
+        return false;
+    }
+}
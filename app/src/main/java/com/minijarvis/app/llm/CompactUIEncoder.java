@@ -0,0 +1,181 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Token-efficient prompt encoding of a UIStructure.
+ * Elements are written as numbered lines without quotes, field names or
+ * escapes, and the model may answer with an element reference ("#2")
+ * instead of repeating the label. The '#' keeps references apart from
+ * labels that are themselves numbers, such as the keys of a dialer:
+ *
+ * <pre>
+ * app: whatsapp
+ * focus: Message
+ * click:
+ * #1 Send
+ * #2 Attach
+ * fields:
+ * #3 Message
+ * </pre>
+ */
+public class CompactUIEncoder {
+    public static final char REFERENCE_MARK = '#';
+
+    private CompactUIEncoder() {
+    }
+
+    /**
+     * Encode a screen for the prompt
+     */
+    public static Encoding encode(UIStructure uiStructure) {
+        String[] clickable = uiStructure.clickable != null ? uiStructure.clickable : new String[0];
+        String[] textFields = uiStructure.textFields != null ? uiStructure.textFields : new String[0];
+        String[] labels = new String[clickable.length + textFields.length];
+
+        StringBuilder sb = new StringBuilder(64 + labels.length * 16);
+        sb.append("app: ").append(oneLine(uiStructure.app)).append('\n');
+        if (uiStructure.focused != null && !uiStructure.focused.isEmpty()) {
+            sb.append("focus: ").append(oneLine(uiStructure.focused)).append('\n');
+        }
+
+        int index = 0;
+        if (clickable.length > 0) {
+            sb.append("click:\n");
+            for (String label : clickable) {
+                labels[index++] = label;
+                sb.append(REFERENCE_MARK).append(index).append(' ').append(oneLine(label)).append('\n');
+            }
+        }
+        if (textFields.length > 0) {
+            sb.append("fields:\n");
+            for (String label : textFields) {
+                labels[index++] = label;
+                sb.append(REFERENCE_MARK).append(index).append(' ').append(oneLine(label)).append('\n');
+            }
+        }
+
+        return new Encoding(uiStructure, sb.toString(), labels, clickable.length);
+    }
+
+    /**
+     * Element reference for a number, e.g. "#3"
+     */
+    public static String reference(int number) {
+        return REFERENCE_MARK + Integer.toString(number);
+    }
+
+    private static String oneLine(String label) {
+        if (label == null) {
+            return "";
+        }
+        return label.indexOf('\n') >= 0 || label.indexOf('\r') >= 0
+                ? label.replace('\r', ' ').replace('\n', ' ')
+                : label;
+    }
+
+    /**
+     * Encoded screen plus the reverse mapping from element numbers to labels
+     */
+    public static class Encoding {
+        private final UIStructure uiStructure;
+        private final String text;
+        private final String[] labels;
+        private final int clickableCount;
+        private Set<String> labelSet;
+
+        Encoding(UIStructure uiStructure, String text, String[] labels, int clickableCount) {
+            this.uiStructure = uiStructure;
+            this.text = text;
+            this.labels = labels;
+            this.clickableCount = clickableCount;
+        }
+
+        public UIStructure getUIStructure() {
+            return uiStructure;
+        }
+
+        /**
+         * Prompt text for this screen
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Number of encoded elements; valid element numbers are 1..size()
+         */
+        public int size() {
+            return labels.length;
+        }
+
+        /**
+         * First element number belonging to text fields
+         */
+        public int firstFieldIndex() {
+            return clickableCount + 1;
+        }
+
+        /**
+         * Exact label for an element number, or null if out of range
+         */
+        public String labelAt(int number) {
+            if (number < 1 || number > labels.length) {
+                return null;
+            }
+            return labels[number - 1];
+        }
+
+        /**
+         * True if target is exactly one of the encoded labels
+         */
+        public boolean isLabel(String target) {
+            if (labelSet == null) {
+                labelSet = new HashSet<>(Arrays.asList(labels));
+            }
+            return labelSet.contains(target);
+        }
+
+        /**
+         * Map a target that is an element reference ("#3") back to its exact
+         * label. A target that is itself a label on this screen, and anything
+         * else, is returned unchanged.
+         */
+        public String resolveTarget(String target) {
+            if (target == null) {
+                return null;
+            }
+            String trimmed = target.trim();
+            if (trimmed.length() < 2 || trimmed.length() > 7 || trimmed.charAt(0) != REFERENCE_MARK
+                    || isLabel(target)) {
+                return target;
+            }
+            int number = 0;
+            for (int i = 1; i < trimmed.length(); i++) {
+                char c = trimmed.charAt(i);
+                if (c < '0' || c > '9') {
+                    return target;
+                }
+                number = number * 10 + (c - '0');
+            }
+            String label = labelAt(number);
+            return label != null ? label : target;
+        }
+
+        /**
+         * Resolve element numbers in click/type targets before execution
+         */
+        public ActionModel resolve(ActionModel action) {
+            if (action != null && (ActionModel.ACTION_CLICK.equals(action.action)
+                    || ActionModel.ACTION_TYPE.equals(action.action))) {
+                action.target = resolveTarget(action.target);
+            }
+            return action;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.minijarvis.app.llm;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide owner of the single LLMEngine, so the model is loaded once
+ * per process no matter how many components use it. Loads the model on a
+ * low-priority background thread, runs a one-token warm-up decode and
+ * records how long each load phase took, so the first instruction does not
+ * pay for any of it.
+ *
+ * <p>Users acquire() and release() the engine. The model is unloaded a grace
+ * period after the last release (so an activity recreation keeps it), a
+ * grace period after a warm-up nobody acquired it for, or when the system
+ * asks to trim memory.
+ *
+ * <p>Each load activates the largest registry variant that fits the memory
+ * the device has available. Memory pressure while the engine is in use
+ * switches to the next smaller installed variant instead of unloading.
+ */
+public class EngineHolder {
+    private static final String TAG = "EngineHolder";
+    private static final long RELEASE_GRACE_MS = 30000;
+
+    private static EngineHolder instance;
+
+    /**
+     * Called on the main thread once a load attempt finishes
+     */
+    public interface ReadinessListener {
+        void onEngineReady(LLMEngine engine, boolean ready);
+    }
+
+    /**
+     * Wall-clock duration of each load phase, 0 if the phase did not run
+     */
+    public static class LoadTimings {
+        public final long modelLoadMs;
+        public final long prefixMs;
+        public final long warmUpMs;
+        public final long totalMs;
+
+        LoadTimings(long modelLoadMs, long prefixMs, long warmUpMs, long totalMs) {
+            this.modelLoadMs = modelLoadMs;
+            this.prefixMs = prefixMs;
+            this.warmUpMs = warmUpMs;
+            this.totalMs = totalMs;
+        }
+
+        @Override
+        public String toString() {
+            return "load " + modelLoadMs + " ms, prefix " + prefixMs + " ms, warm-up " +
+                    warmUpMs + " ms, total " + totalMs + " ms";
+        }
+    }
+
+    private final Context context;
+    private final LLMEngine engine;
+    private final ModelManager modelManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        r.run();
+    }, "MiniJarvis-EngineLoader"));
+    private final List<ReadinessListener> listeners = new ArrayList<>();
+
+    private FutureTask<LLMEngine> loadTask;
+    private boolean attemptFinished = false;
+    private volatile LoadTimings loadTimings;
+    private int refCount = 0;
+    // Memory requirement a pressure downgrade capped the variant at, until the model is unloaded
+    private long ramCeiling = Long.MAX_VALUE;
+    private final Runnable releaseIfUnused = this::releaseIfUnused;
+
+    private EngineHolder(Context context) {
+        this.context = context.getApplicationContext();
+        this.engine = new LLMEngine(this.context);
+        this.modelManager = ModelManager.getInstance(this.context);
+    }
+
+    public static synchronized EngineHolder getInstance(Context context) {
+        if (instance == null) {
+            instance = new EngineHolder(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Take a reference to the shared engine and make sure it is loading.
+     * Every acquire() must be paired with a release().
+     */
+    public synchronized LLMEngine acquire() {
+        refCount++;
+        mainHandler.removeCallbacks(releaseIfUnused);
+        if (!engine.isReady() && engine.isModelDownloaded()) {
+            warmUp();
+        }
+        return engine;
+    }
+
+    /**
+     * Drop a reference; the model is unloaded once nobody has used it for
+     * RELEASE_GRACE_MS
+     */
+    public synchronized void release() {
+        if (refCount == 0) {
+            Log.w(TAG, "release() without acquire()");
+            return;
+        }
+        refCount--;
+        if (refCount == 0) {
+            mainHandler.postDelayed(releaseIfUnused, RELEASE_GRACE_MS);
+        }
+    }
+
+    /**
+     * Forwarded from Application.onTrimMemory. Unloads the model when it is
+     * unused and the app left the foreground or memory runs low, or under
+     * critical pressure even while in use; the next acquire() or warmUp()
+     * loads it again.
+     */
+    public synchronized void onTrimMemory(int level) {
+        boolean pressure = level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        if (refCount > 0 && pressure && engine.isReady() && downgrade()) {
+            return;
+        }
+        boolean unload = refCount == 0
+                ? pressure || level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                : level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                        || level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+        if (unload) {
+            Log.i(TAG, "Trim memory level " + level + ", unloading model");
+            unload();
+        }
+    }
+
+    /**
+     * The shared engine; may not be initialized yet, see isReady()
+     */
+    public LLMEngine getEngine() {
+        return engine;
+    }
+
+    public boolean isReady() {
+        return engine.isReady();
+    }
+
+    /**
+     * Start loading the model in the background if it is not loaded or
+     * loading already. A failed attempt (e.g. model not downloaded yet) is
+     * retried on the next call. If nobody has acquired the engine by the
+     * time the load finishes, it is unloaded again RELEASE_GRACE_MS later.
+     *
+     * @return Future completing with the engine once the attempt finishes
+     */
+    public synchronized Future<LLMEngine> warmUp() {
+        if (loadTask != null && (!loadTask.isDone() || engine.isReady())) {
+            return loadTask;
+        }
+        long available = availableRamBytes();
+        ModelVariant variant = modelManager.select(Math.min(available, ramCeiling));
+        Log.i(TAG, "Selected " + variant + " for " + available / (1024 * 1024) + " MB available");
+        attemptFinished = false;
+        loadTask = new FutureTask<>(this::load);
+        loader.execute(loadTask);
+        return loadTask;
+    }
+
+    /**
+     * Get notified when the current load attempt finishes. Called right away
+     * (posted) if it already has.
+     */
+    public synchronized void addReadinessListener(ReadinessListener listener) {
+        if (attemptFinished) {
+            boolean ready = engine.isReady();
+            mainHandler.post(() -> listener.onEngineReady(engine, ready));
+            if (ready) {
+                return;
+            }
+        }
+        listeners.add(listener);
+    }
+
+    public synchronized void removeReadinessListener(ReadinessListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Timings of the last load, or null before one completed
+     */
+    public LoadTimings getLoadTimings() {
+        return loadTimings;
+    }
+
+    /**
+     * Measure tokens per second of every installed variant on the loader
+     * thread. The shared engine is unloaded for the run and reloaded after
+     * if it is still in use.
+     */
+    public synchronized Future<List<ModelBenchmark.Result>> runModelBenchmark() {
+        unload();
+        loadTask = null;
+        FutureTask<List<ModelBenchmark.Result>> task = new FutureTask<>(() -> {
+            List<ModelBenchmark.Result> results = ModelBenchmark.run(context);
+            synchronized (EngineHolder.this) {
+                if (refCount > 0) {
+                    warmUp();
+                }
+            }
+            return results;
+        });
+        loader.execute(task);
+        return task;
+    }
+
+    private synchronized void releaseIfUnused() {
+        if (refCount == 0) {
+            Log.i(TAG, "Engine unused, unloading model");
+            unload();
+            // The next session sizes the model to the memory available then
+            ramCeiling = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Reload with the next smaller installed variant
+     *
+     * @return false if there is none
+     */
+    private boolean downgrade() {
+        ModelVariant current = engine.getVariant();
+        ModelVariant smaller = current != null ? modelManager.getSmallerInstalled(current) : null;
+        if (smaller == null) {
+            return false;
+        }
+        Log.i(TAG, "Memory pressure, switching from " + current + " to " + smaller);
+        ramCeiling = smaller.getRequiredRamBytes();
+        unload();
+        // Queued behind the unload on the loader thread
+        loadTask = null;
+        warmUp();
+        return true;
+    }
+
+    /**
+     * Memory the model may use: what the system reports available above its
+     * low-memory threshold, plus what the loaded model already holds
+     */
+    private long availableRamBytes() {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        long available = memoryInfo.availMem - memoryInfo.threshold;
+        if (engine.isReady() && engine.getVariant() != null) {
+            available += engine.getVariant().getRequiredRamBytes();
+        }
+        return Math.max(0, available);
+    }
+
+    private void unload() {
+        mainHandler.removeCallbacks(releaseIfUnused);
+        // Runs after any load in progress; cleanup() waits for a running generation
+        loader.execute(engine::cleanup);
+    }
+
+    private LLMEngine load() {
+        boolean ready = engine.isReady();
+        if (!ready) {
+            long start = System.currentTimeMillis();
+            ready = engine.initialize();
+            long warmUpMs = ready ? engine.warmUp() : 0;
+            loadTimings = new LoadTimings(engine.getModelLoadMs(), engine.getPrefixMs(), warmUpMs,
+                    System.currentTimeMillis() - start);
+            Log.i(TAG, (ready ? "Engine ready: " : "Engine not loaded: ") + loadTimings);
+        }
+        notifyListeners(ready);
+        return engine;
+    }
+
+    private void notifyListeners(boolean ready) {
+        List<ReadinessListener> pending;
+        synchronized (this) {
+            attemptFinished = true;
+            pending = new ArrayList<>(listeners);
+            if (ready) {
+                listeners.clear();
+                // A warm-up nobody acquired, e.g. the one from Application.onCreate
+                if (refCount == 0) {
+                    mainHandler.removeCallbacks(releaseIfUnused);
+                    mainHandler.postDelayed(releaseIfUnused, RELEASE_GRACE_MS);
+                }
+            }
+        }
+        for (ReadinessListener listener : pending) {
+            mainHandler.post(() -> listener.onEngineReady(engine, ready));
+        }
+    }
+}
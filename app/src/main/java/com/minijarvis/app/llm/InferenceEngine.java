@@ -0,0 +1,34 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.List;
+
+/**
+ * Common surface of the backends that turn an instruction and a screen
+ * into the next action
+ */
+public interface InferenceEngine {
+
+    boolean initialize();
+
+    boolean isReady();
+
+    /**
+     * Generate an action based on user instruction and UI structure
+     */
+    ActionModel generateAction(String userInstruction, UIStructure uiStructure);
+
+    /**
+     * Generate the next action of a multi-step task, given the actions already taken
+     */
+    ActionModel generateAction(String userInstruction, UIStructure uiStructure, List<ActionModel> history);
+
+    /**
+     * Abort a generation in progress; safe to call from any thread
+     */
+    void cancelGeneration();
+
+    void cleanup();
+}
@@ -0,0 +1,153 @@
+package com.minijarvis.app.llm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive Aho-Corasick matcher over a fixed set of up to 64
+ * keywords, compiled once into flat arrays. Matching walks the text a
+ * single time and never allocates, so it is safe on per-instruction paths.
+ * Keyword ids are their index in the constructor arguments.
+ */
+public class KeywordMatcher {
+    private static final int MAX_KEYWORDS = 64;
+
+    // Node n's transitions are labels/targets[offsets[n] .. offsets[n + 1]), sorted by label
+    private final int[] offsets;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] fail;
+    // Keywords ending at a node, including those reached through fail links
+    private final long[] outputs;
+    // Keyword that is exactly the path to a node, or -1
+    private final int[] terminal;
+
+    public KeywordMatcher(String... keywords) {
+        if (keywords.length > MAX_KEYWORDS) {
+            throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords");
+        }
+
+        // Build a plain trie first
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> terminals = new ArrayList<>();
+        children.add(new TreeMap<Character, Integer>());
+        terminals.add(-1);
+        for (int id = 0; id < keywords.length; id++) {
+            String keyword = keywords[id].toLowerCase(Locale.ROOT);
+            if (keyword.isEmpty()) {
+                throw new IllegalArgumentException("Empty keyword");
+            }
+            int node = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = children.get(node).get(keyword.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    terminals.add(-1);
+                    children.get(node).put(keyword.charAt(i), next);
+                }
+                node = next;
+            }
+            terminals.set(node, id);
+        }
+
+        // Flatten transitions
+        int nodeCount = children.size();
+        offsets = new int[nodeCount + 1];
+        int edgeCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            offsets[node] = edgeCount;
+            edgeCount += children.get(node).size();
+        }
+        offsets[nodeCount] = edgeCount;
+        labels = new char[edgeCount];
+        targets = new int[edgeCount];
+        terminal = new int[nodeCount];
+        outputs = new long[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int edge = offsets[node];
+            for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                labels[edge] = entry.getKey();
+                targets[edge] = entry.getValue();
+                edge++;
+            }
+            terminal[node] = terminals.get(node);
+            if (terminal[node] >= 0) {
+                outputs[node] = 1L << terminal[node];
+            }
+        }
+
+        // Fail links in breadth-first order so a node's fail target is final before its children
+        fail = new int[nodeCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int edge = offsets[0]; edge < offsets[1]; edge++) {
+            queue.add(targets[edge]);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            outputs[node] |= outputs[fail[node]];
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                int child = targets[edge];
+                int state = fail[node];
+                int next = step(state, labels[edge]);
+                while (next < 0 && state != 0) {
+                    state = fail[state];
+                    next = step(state, labels[edge]);
+                }
+                fail[child] = next >= 0 ? next : 0;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Bit set of the ids of all keywords occurring anywhere in text
+     */
+    public long matchMask(CharSequence text) {
+        return matchMask(text, 0, text.length());
+    }
+
+    /**
+     * Bit set of the ids of all keywords occurring in text[start, end)
+     */
+    public long matchMask(CharSequence text, int start, int end) {
+        long mask = 0;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next = step(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(state, c);
+            }
+            state = next >= 0 ? next : 0;
+            mask |= outputs[state];
+        }
+        return mask;
+    }
+
+    /**
+     * Id of the keyword equal to text[start, end), or -1
+     */
+    public int exactMatch(CharSequence text, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end && state >= 0; i++) {
+            state = step(state, Character.toLowerCase(text.charAt(i)));
+        }
+        return state > 0 ? terminal[state] : -1;
+    }
+
+    public static boolean contains(long mask, int id) {
+        return (mask & (1L << id)) != 0;
+    }
+
+    private int step(int node, char c) {
+        int index = Arrays.binarySearch(labels, offsets[node], offsets[node + 1], c);
+        return index >= 0 ? targets[index] : -1;
+    }
+}
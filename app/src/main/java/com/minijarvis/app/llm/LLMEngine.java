@@ -6,32 +6,72 @@ import android.util.Log;
 import com.google.gson.Gson;
 import com.minijarvis.app.model.UIStructure;
 import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.util.GsonProvider;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * LLM Engine using llama.cpp native library
  * Loads Gemma 2B model and performs inference
  */
-public class LLMEngine {
+public class LLMEngine implements InferenceEngine {
     private static final String TAG = "LLMEngine";
-    private static final String MODEL_FILE = "gemma-2b-q4_0.gguf";
-    private static final String MODEL_DIR = "models";
-    private static final String MODEL_URL = "https://huggingface.co/leliuga/ggml-gemma-2b-v1-q4_0/resolve/main/gemma-2b-v1-q4_0.gguf";
-    private static final int CONTEXT_SIZE = 1024;
     private static final float TEMPERATURE = 0.2f;
     private static final int MAX_TOKENS = 120;
-    private static final long MIN_MODEL_SIZE = 1500000000; // Minimum 1.5GB for valid model
+    private static final String PREFIX_CACHE_EXT = ".kvcache";
+    // Grown to fit the longest prompt or grammar seen
+    private static final int INITIAL_TEXT_BUFFER = 8 * 1024;
+    // Holds one token piece plus an unfinished UTF-8 sequence before it
+    private static final int PIECE_BUFFER_SIZE = 1024;
+
+    private static final boolean NATIVE_LOADED = loadNativeLibrary();
+    private static Boolean cpuSupported;
 
     private Context context;
+    private final ModelManager modelManager;
+    // Registry variant to load instead of the active one, e.g. for benchmarks
+    private ModelVariant pinnedVariant;
+    private ModelVariant variant;
     private long modelPtr = 0;
-    private boolean initialized = false;
-    private Gson gson = new Gson();
+    private volatile boolean initialized = false;
+    private int prefixTokens = 0; // Tokens of SYSTEM_PROMPT held in the KV cache
+    private boolean constrainedDecoding = true;
+    // Requests are numbered on entry; cancelGeneration() cancels every number issued so far
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong cancelledThrough = new AtomicLong();
+    // Load options, read by initialize()
+    private boolean useMmap = true;
+    private boolean lockHotLayers = false;
+    private boolean prefetch = true;
+    private long modelLoadMs = 0;
+    private long prefixMs = 0;
+    private final Gson gson = GsonProvider.get();
+
+    // Direct buffers shared with the native side, reused across calls
+    private ByteBuffer textBuffer = ByteBuffer.allocateDirect(INITIAL_TEXT_BUFFER);
+    private final ByteBuffer pieceBuffer = ByteBuffer.allocateDirect(PIECE_BUFFER_SIZE);
+    private final CharBuffer pieceChars = CharBuffer.allocate(PIECE_BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    // A model can emit stray bytes; they must not stall the decoder
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Grammar held by the native sampler, so an unchanged one is not parsed again
+    private String activeGrammar;
 
     // System prompt for MiniJarvis
     private static final String SYSTEM_PROMPT = "You are MiniJarvis, an Android automation engine.\n\n" +
@@ -40,7 +80,7 @@ public class LLMEngine {
             "You only choose ONE next action.\n\n" +
             "You receive:\n" +
             "- User instruction\n" +
-            "- Structured UI JSON\n\n" +
+            "- Numbered UI elements (click, fields)\n\n" +
             "Return strictly valid JSON:\n" +
             "{\n" +
             "  \"action\": \"\",\n" +
@@ -55,55 +95,108 @@ public class LLMEngine {
             "- go_back\n" +
             "- nothing\n\n" +
             "Rules:\n" +
-            "- target must match exactly from clickable or text_fields\n" +
+            "- target is the #number of an element from click or fields, e.g. \"#2\"\n" +
             "- text only when action = type\n" +
             "- never hallucinate elements\n" +
             "- if unsure, return action = \"nothing\"\n" +
+            "- return action = \"nothing\" once the instruction is done\n" +
             "- output JSON only";
 
+    /**
+     * Receives generated text one token at a time
+     */
+    public interface TokenListener {
+        /**
+         * @return false to stop decoding after this token
+         */
+        boolean onToken(String piece);
+    }
+
     public LLMEngine(Context context) {
         this.context = context;
+        this.modelManager = ModelManager.getInstance(context);
+    }
+
+    private static boolean loadNativeLibrary() {
+        try {
+            System.loadLibrary("minijarvis_jni");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.w(TAG, "Native library not available: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Whether the llama.cpp bridge is packaged and this CPU can run it
+     */
+    public static synchronized boolean isNativeAvailable() {
+        if (cpuSupported == null) {
+            cpuSupported = NATIVE_LOADED && nativeIsCpuSupported();
+            if (NATIVE_LOADED && !cpuSupported) {
+                Log.w(TAG, "CPU lacks the instructions the native library was built for");
+            }
+        }
+        return cpuSupported;
     }
 
     /**
      * Initialize the LLM engine by loading the model
      */
-    public boolean initialize() {
+    @Override
+    public synchronized boolean initialize() {
         try {
+            // Checked first: without the library no model file is at fault
+            if (!isNativeAvailable()) {
+                Log.w(TAG, "Native inference unavailable on this device");
+                return false;
+            }
+
             // Check if model exists in models subdirectory
-            File modelDir = new File(context.getFilesDir(), MODEL_DIR);
-            File modelFile = new File(modelDir, MODEL_FILE);
+            variant = pinnedVariant != null ? pinnedVariant : modelManager.getActiveVariant();
+            File modelFile = modelManager.getModelFile(variant);
             
             if (!modelFile.exists()) {
                 Log.i(TAG, "Model not found at: " + modelFile.getAbsolutePath());
-                // Model will be downloaded by ModelDownloadActivity
+                // Model will be downloaded through ModelManager
                 return false;
             }
 
             String modelPath = modelFile.getAbsolutePath();
             
-            // Validate model file
-            if (!modelFile.exists() || modelFile.length() < MIN_MODEL_SIZE) {
-                Log.w(TAG, "Model file invalid or incomplete. Size: " + modelFile.length());
-                // Delete corrupted file
-                modelFile.delete();
+            // Validate model file from its stamp, without reading it
+            if (!modelManager.isInstalled(variant)) {
+                Log.w(TAG, "Model file unverified or incomplete. Size: " + modelFile.length());
+                // Deletes it if it has no manifest to be repaired from
+                modelManager.invalidate(variant);
                 return false;
             }
 
-            Log.i(TAG, "Loading model from: " + modelPath);
+            Log.i(TAG, "Loading " + variant + " from: " + modelPath);
             Log.i(TAG, "Model size: " + (modelFile.length() / (1024 * 1024 * 1024)) + " GB");
             
-            // Initialize native library
-            modelPtr = nativeInit(modelPath, CONTEXT_SIZE, TEMPERATURE, MAX_TOKENS);
+            // Initialize native library; with mmap the weights stay shared page cache
+            long loadStart = System.currentTimeMillis();
+            modelPtr = nativeInit(modelPath, variant.getContextLength(), TEMPERATURE, MAX_TOKENS,
+                    useMmap, lockHotLayers, prefetch);
+            modelLoadMs = System.currentTimeMillis() - loadStart;
             if (modelPtr == 0) {
                 Log.e(TAG, "Failed to initialize model - native init returned 0");
-                // Model might be corrupted, delete it
-                modelFile.delete();
+                // Keep the file: this now runs at every start, and one failed
+                // load must not wipe a 1.5 GB download.
+                // Withdraw its stamp instead, so a rehash finds any corrupt chunks
+                modelManager.invalidate(variant);
                 return false;
             }
 
+            // Evaluate (or restore) the constant system prompt once
+            long prefixStart = System.currentTimeMillis();
+            preparePrefixCache(modelFile);
+            prefixMs = System.currentTimeMillis() - prefixStart;
+
             initialized = true;
             Log.i(TAG, "LLM Engine initialized successfully");
+            Log.i(TAG, "Model memory: " + ModelMemoryStats.read(modelFile));
             return true;
         } catch (Exception e) {
             Log.e(TAG, "Error initializing LLM engine", e);
@@ -114,26 +207,65 @@ public class LLMEngine {
     /**
      * Generate an action based on user instruction and UI structure
      */
+    @Override
     public ActionModel generateAction(String userInstruction, UIStructure uiStructure) {
+        return generateAction(userInstruction, uiStructure, Collections.<ActionModel>emptyList());
+    }
+
+    /**
+     * Generate the next action of a multi-step task, given the actions already taken
+     */
+    @Override
+    public ActionModel generateAction(String userInstruction, UIStructure uiStructure,
+                                      List<ActionModel> history) {
+        // Numbered before waiting for the lock, so a cancel during the wait applies
+        return generateAction(requestCount.incrementAndGet(), userInstruction, uiStructure, history);
+    }
+
+    private synchronized ActionModel generateAction(long request, String userInstruction,
+                                                    UIStructure uiStructure, List<ActionModel> history) {
         if (!initialized || modelPtr == 0) {
             Log.w(TAG, "LLM engine not initialized");
             return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
         }
+        if (isCancelled(request)) {
+            Log.i(TAG, "Generation cancelled before it started");
+            return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+        }
 
         try {
-            // Build prompt
-            String uiJson = gson.toJson(uiStructure);
-            String prompt = buildPrompt(userInstruction, uiJson);
+            // Build prompt from the compact numbered element list
+            CompactUIEncoder.Encoding encoding = CompactUIEncoder.encode(uiStructure);
+            // With the system prompt cached, only the suffix needs prefill
+            String prompt = prefixTokens > 0
+                    ? buildPromptSuffix(userInstruction, encoding.getText(), history)
+                    : buildPrompt(userInstruction, encoding.getText(), history);
+
+            // Constrain sampling to the action schema and the targets on this screen
+            String grammar = constrainedDecoding ? ActionGrammar.build(encoding) : null;
+
+            // Stream tokens and stop as soon as a complete action object is emitted
+            final ActionJsonRecognizer recognizer = new ActionJsonRecognizer(gson);
+            String response = generateStream(prompt, grammar,
+                    piece -> !isCancelled(request) && !recognizer.append(piece));
             
-            // Generate completion
-            String response = nativeGenerate(modelPtr, prompt);
-            if (response == null || response.isEmpty()) {
-                Log.w(TAG, "Empty response from LLM");
+            if (isCancelled(request)) {
+                Log.i(TAG, "Generation cancelled");
                 return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
             }
-
-            // Parse JSON response
-            ActionModel action = parseActionResponse(response);
+            
+            ActionModel action = recognizer.getAction();
+            if (action == null) {
+                if (response == null || response.isEmpty()) {
+                    Log.w(TAG, "Empty response from LLM");
+                    return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+                }
+                // Parse JSON response
+                action = parseActionResponse(response);
+            }
+            
+            // Map element references back to exact labels for ActionExecutor
+            action = encoding.resolve(action);
             Log.i(TAG, "Generated action: " + action.action + " target: " + action.target);
             return action;
         } catch (Exception e) {
@@ -142,71 +274,351 @@ public class LLMEngine {
         }
     }
 
+    /**
+     * Decode a single token of a dummy prompt so the weights, KV cache and
+     * compute buffers are touched before the first real instruction
+     *
+     * @return Duration of the warm-up decode in ms
+     */
+    public synchronized long warmUp() {
+        if (!isReady()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            String prompt = prefixTokens > 0
+                    ? buildPromptSuffix("warm up", "app: none\n", null)
+                    : buildPrompt("warm up", "app: none\n", null);
+            generateStream(prompt, null, piece -> false);
+        } catch (Exception e) {
+            Log.w(TAG, "Warm-up decode failed", e);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Decode an unconstrained reply of up to MAX_TOKENS tokens and time it
+     *
+     * @return Tokens per second from the first token on, so prefill is not
+     *         counted; 0 if not ready or nothing was generated
+     */
+    public synchronized float measureTokensPerSecond() {
+        if (!isReady()) {
+            return 0f;
+        }
+        final long[] firstTokenNanos = {0};
+        final int[] tokens = {0};
+        try {
+            String prompt = prefixTokens > 0
+                    ? buildPromptSuffix("open settings and turn on wifi", "app: settings\n", null)
+                    : buildPrompt("open settings and turn on wifi", "app: settings\n", null);
+            generateStream(prompt, null, piece -> {
+                if (tokens[0]++ == 0) {
+                    firstTokenNanos[0] = System.nanoTime();
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            Log.w(TAG, "Speed measurement failed", e);
+            return 0f;
+        }
+        long elapsed = System.nanoTime() - firstTokenNanos[0];
+        return tokens[0] > 1 && elapsed > 0 ? (tokens[0] - 1) * 1e9f / elapsed : 0f;
+    }
+
+    /**
+     * Load this registry variant on the next initialize() instead of the
+     * active one; null to follow ModelManager again
+     */
+    public void setVariant(ModelVariant variant) {
+        this.pinnedVariant = variant;
+    }
+
+    /**
+     * Variant of the last initialize(), loaded or not
+     */
+    public ModelVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Duration of the last native model load in ms
+     */
+    public long getModelLoadMs() {
+        return modelLoadMs;
+    }
+
+    /**
+     * Duration of the last system prompt prefill or KV restore in ms
+     */
+    public long getPrefixMs() {
+        return prefixMs;
+    }
+
     /**
      * Check if model is loaded and ready
      */
+    @Override
     public boolean isReady() {
         return initialized && modelPtr != 0;
     }
 
+    /**
+     * Abort the generation in progress after its current token, along with
+     * any waiting to start. Later requests are not affected.
+     * Safe to call from any thread.
+     */
+    @Override
+    public void cancelGeneration() {
+        cancelledThrough.accumulateAndGet(requestCount.get(), Math::max);
+    }
+
+    private boolean isCancelled(long request) {
+        return request <= cancelledThrough.get();
+    }
+
+    /**
+     * Enable or disable grammar-constrained decoding (enabled by default)
+     */
+    public void setConstrainedDecoding(boolean enabled) {
+        this.constrainedDecoding = enabled;
+    }
+
+    public boolean isConstrainedDecoding() {
+        return constrainedDecoding;
+    }
+
+    /**
+     * Map the weights read-only instead of reading them into the heap
+     * (default on). Takes effect on the next initialize().
+     */
+    public void setUseMmap(boolean useMmap) {
+        this.useMmap = useMmap;
+    }
+
+    /**
+     * mlock the token embeddings, output head and first layers so they are
+     * never paged out (default off). Requires mmap; costs locked RAM.
+     */
+    public void setLockHotLayers(boolean lockHotLayers) {
+        this.lockHotLayers = lockHotLayers;
+    }
+
+    /**
+     * Once the model is mapped, ask the kernel to read the token embeddings,
+     * output head and first layers ahead (default on), so they do not fault
+     * in during the first decode. The rest of the file still loads on
+     * demand. Requires mmap; has no effect with setLockHotLayers.
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Mapped, resident and locked bytes of the model file in this process
+     */
+    public ModelMemoryStats getMemoryStats() {
+        return ModelMemoryStats.read(new File(getModelPath()));
+    }
+
     /**
      * Check if model file exists and is valid
      */
     public boolean isModelDownloaded() {
-        File modelDir = new File(context.getFilesDir(), MODEL_DIR);
-        File modelFile = new File(modelDir, MODEL_FILE);
-        return modelFile.exists() && modelFile.length() >= MIN_MODEL_SIZE;
+        return modelManager.isModelReady();
     }
     
     /**
      * Get the model file path
      */
     public String getModelPath() {
-        File modelDir = new File(context.getFilesDir(), MODEL_DIR);
-        File modelFile = new File(modelDir, MODEL_FILE);
-        return modelFile.getAbsolutePath();
+        return modelManager.getModelFile().getAbsolutePath();
     }
     
     /**
      * Delete corrupted model file to force re-download
      */
     public boolean deleteModelFile() {
-        File modelDir = new File(context.getFilesDir(), MODEL_DIR);
-        File modelFile = new File(modelDir, MODEL_FILE);
-        if (modelFile.exists()) {
-            boolean deleted = modelFile.delete();
-            Log.i(TAG, "Model file deleted: " + deleted);
-            return deleted;
-        }
-        return true;
+        deletePrefixCaches(modelManager.getModelFile(), null);
+        boolean deleted = modelManager.deleteModel();
+        Log.i(TAG, "Model file deleted: " + deleted);
+        return deleted;
     }
 
     /**
      * Get model download URL for user
      */
     public String getModelDownloadUrl() {
-        return MODEL_URL;
+        return modelManager.getActiveVariant().getUrl();
     }
 
     /**
      * Cleanup resources
      */
-    public void cleanup() {
+    @Override
+    public synchronized void cleanup() {
         if (modelPtr != 0) {
             nativeCleanup(modelPtr);
             modelPtr = 0;
         }
+        prefixTokens = 0;
+        activeGrammar = null;
         initialized = false;
     }
 
-    private String buildPrompt(String userInstruction, String uiJson) {
-        return SYSTEM_PROMPT + "\n\n" +
-                "User instruction: " + userInstruction + "\n\n" +
-                "UI structure:\n" + uiJson + "\n\n" +
-                "Return JSON only:";
+    /**
+     * Prefill prompt and decode token by token until EOS, MAX_TOKENS or the
+     * listener stops it. Text travels as UTF-8 through the direct buffers,
+     * so the native side neither builds nor calls back with a String per token.
+     *
+     * @param grammar GBNF constraining the output, or null for free decoding
+     * @return Text generated up to the point decoding stopped
+     */
+    private String generateStream(String prompt, String grammar, TokenListener listener) {
+        if (grammar == null ? activeGrammar != null : !grammar.equals(activeGrammar)) {
+            int length = grammar != null ? encodeText(grammar) : 0;
+            activeGrammar = nativeSetGrammar(modelPtr, textBuffer, length) ? grammar : null;
+            if (activeGrammar == null && grammar != null) {
+                Log.w(TAG, "Grammar rejected, decoding unconstrained");
+            }
+        }
+        if (nativeBeginGeneration(modelPtr, textBuffer, encodeText(prompt)) < 0) {
+            Log.w(TAG, "Prompt prefill failed");
+            return "";
+        }
+
+        StringBuilder response = new StringBuilder();
+        decoder.reset();
+        pieceBuffer.clear().limit(0);
+        while (true) {
+            // Bytes before position are decoded; a partial character may remain up to limit
+            int written = nativeNextToken(modelPtr, pieceBuffer, pieceBuffer.limit());
+            if (written < 0) {
+                break;
+            }
+            pieceBuffer.limit(pieceBuffer.limit() + written);
+            pieceChars.clear();
+            decoder.decode(pieceBuffer, pieceChars, false);
+            pieceBuffer.compact().flip();
+            pieceChars.flip();
+            if (!pieceChars.hasRemaining()) {
+                continue;
+            }
+            String piece = pieceChars.toString();
+            response.append(piece);
+            if (!listener.onToken(piece)) {
+                break;
+            }
+        }
+        return response.toString();
+    }
+
+    /**
+     * Write text as UTF-8 at the start of textBuffer, growing it as needed
+     *
+     * @return Number of bytes written
+     */
+    private int encodeText(String text) {
+        while (true) {
+            textBuffer.clear();
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(text), textBuffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(textBuffer);
+            }
+            if (!result.isOverflow()) {
+                return textBuffer.position();
+            }
+            textBuffer = ByteBuffer.allocateDirect(textBuffer.capacity() * 2);
+        }
+    }
+
+    /**
+     * Load the KV state of SYSTEM_PROMPT from disk, or evaluate it once and
+     * persist the snapshot next to the model so later cold starts skip prefill
+     */
+    private void preparePrefixCache(File modelFile) {
+        File stateFile = getPrefixCacheFile(modelFile);
+        
+        if (stateFile.exists()) {
+            prefixTokens = nativeLoadState(modelPtr, stateFile.getAbsolutePath());
+            if (prefixTokens > 0) {
+                Log.i(TAG, "Restored system prompt KV cache: " + prefixTokens + " tokens");
+                return;
+            }
+            Log.w(TAG, "KV cache snapshot unreadable, rebuilding");
+            stateFile.delete();
+        }
+        
+        long start = System.currentTimeMillis();
+        prefixTokens = nativeEvalPrefix(modelPtr, textBuffer, encodeText(SYSTEM_PROMPT));
+        if (prefixTokens <= 0) {
+            Log.w(TAG, "System prompt prefill failed, using full prompts");
+            prefixTokens = 0;
+            return;
+        }
+        Log.i(TAG, "System prompt prefilled: " + prefixTokens + " tokens in " +
+                (System.currentTimeMillis() - start) + " ms");
+        
+        // Drop snapshots made for another prompt/model, then persist this one
+        deletePrefixCaches(modelFile, stateFile);
+        if (!nativeSaveState(modelPtr, stateFile.getAbsolutePath())) {
+            Log.w(TAG, "Failed to persist KV cache snapshot");
+        }
+    }
+
+    /**
+     * Snapshot file for the current prompt, context size and model file.
+     * Any change to one of them yields a different name, so stale state is never loaded.
+     */
+    private File getPrefixCacheFile(File modelFile) {
+        long key = SYSTEM_PROMPT.hashCode();
+        key = key * 31 + variant.getContextLength();
+        key = key * 31 + modelFile.length();
+        key = key * 31 + modelFile.lastModified();
+        return new File(modelFile.getParentFile(),
+                modelFile.getName() + "." + Long.toHexString(key) + PREFIX_CACHE_EXT);
+    }
+
+    private void deletePrefixCaches(File modelFile, File keep) {
+        File[] files = modelFile.getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(modelFile.getName() + ".") && name.endsWith(PREFIX_CACHE_EXT)
+                    && !file.equals(keep)) {
+                file.delete();
+            }
+        }
+    }
+
+    // Prompt and parsing helpers are static and package-private for the JVM benchmarks
+    static String buildPrompt(String userInstruction, String uiText, List<ActionModel> history) {
+        return SYSTEM_PROMPT + buildPromptSuffix(userInstruction, uiText, history);
+    }
+
+    /**
+     * Part of the prompt that follows the cached SYSTEM_PROMPT prefix
+     */
+    static String buildPromptSuffix(String userInstruction, String uiText, List<ActionModel> history) {
+        StringBuilder sb = new StringBuilder(256 + uiText.length());
+        sb.append("\n\n")
+                .append("User instruction: ").append(userInstruction).append("\n\n");
+        if (history != null && !history.isEmpty()) {
+            sb.append("Actions taken:\n");
+            for (ActionModel previous : history) {
+                sb.append("- ").append(previous).append('\n');
+            }
+            sb.append('\n');
+        }
+        sb.append("UI elements:\n").append(uiText).append('\n')
+                .append("Return JSON only:");
+        return sb.toString();
     }
 
-    private ActionModel parseActionResponse(String response) {
+    static ActionModel parseActionResponse(String response) {
         try {
             // Clean response - extract JSON
             String jsonStr = extractJsonFromResponse(response);
@@ -215,14 +627,14 @@ public class LLMEngine {
                 return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
             }
             
-            return gson.fromJson(jsonStr, ActionModel.class);
+            return GsonProvider.get().fromJson(jsonStr, ActionModel.class);
         } catch (Exception e) {
             Log.e(TAG, "Error parsing action response", e);
             return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
         }
     }
 
-    private String extractJsonFromResponse(String response) {
+    static String extractJsonFromResponse(String response) {
         // Find first { and last }
         int startIdx = response.indexOf('{');
         int endIdx = response.lastIndexOf('}');
@@ -233,8 +645,15 @@ public class LLMEngine {
         return null;
     }
 
-    // Native methods
-    private native long nativeInit(String modelPath, int contextSize, float temperature, int maxTokens);
-    private native String nativeGenerate(long modelPtr, String prompt);
+    // Native methods; text arguments are UTF-8 in direct buffers, length in bytes
+    private static native boolean nativeIsCpuSupported();
+    private native long nativeInit(String modelPath, int contextSize, float temperature, int maxTokens,
+                                   boolean useMmap, boolean lockHotLayers, boolean prefetch);
+    private native boolean nativeSetGrammar(long modelPtr, ByteBuffer grammar, int length);
+    private native int nativeBeginGeneration(long modelPtr, ByteBuffer prompt, int length);
+    private native int nativeNextToken(long modelPtr, ByteBuffer out, int offset);
+    private native int nativeEvalPrefix(long modelPtr, ByteBuffer prefix, int length);
+    private native boolean nativeSaveState(long modelPtr, String statePath);
+    private native int nativeLoadState(long modelPtr, String statePath);
     private native void nativeCleanup(long modelPtr);
 }
\ No newline at end of file
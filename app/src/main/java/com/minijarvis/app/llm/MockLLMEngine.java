@@ -2,19 +2,70 @@ package com.minijarvis.app.llm;
 
 import android.content.Context;
 import android.util.Log;
-import com.google.gson.Gson;
 import com.minijarvis.app.model.UIStructure;
 import com.minijarvis.app.model.ActionModel;
+import java.util.List;
+import java.util.Locale;
 import java.util.Random;
 
 /**
  * Mock LLM Engine for testing without the actual model
  * Uses simple rule-based responses for demonstration
  */
-public class MockLLMEngine {
+public class MockLLMEngine implements InferenceEngine {
     private static final String TAG = "MockLLMEngine";
+
+    // Intent keywords, matched anywhere in the instruction like String.contains
+    private static final int TYPE = 0;
+    private static final int SEND = 1;
+    private static final int WRITE = 2;
+    private static final int SCROLL = 3;
+    private static final int BACK = 4;
+    private static final int LAUNCH = 5;
+    private static final int CLICK = 6;
+    private static final int TAP = 7;
+    private static final int PRESS = 8;
+    private static final KeywordMatcher INTENTS = new KeywordMatcher(
+            "type", "send", "write", "scroll", "back", "launch", "click", "tap", "press");
+    private static final long TYPE_INTENTS = (1L << TYPE) | (1L << SEND) | (1L << WRITE);
+    private static final long CLICK_INTENTS = (1L << CLICK) | (1L << TAP) | (1L << PRESS);
+
+    // Whole-word matchers
+    private static final KeywordMatcher CLICK_VERBS = new KeywordMatcher("click", "tap", "press");
+    private static final KeywordMatcher OPEN_VERBS = new KeywordMatcher("open", "launch");
+    // Ids 0-1 scroll forward, 2-3 backward
+    private static final KeywordMatcher SCROLL_DIRECTIONS = new KeywordMatcher("down", "forward", "up", "backward");
+    private static final KeywordMatcher COMMON_WORDS = new KeywordMatcher(
+            "the", "a", "an", "to", "in", "on", "at", "for", "of", "and", "or", "but",
+            "is", "are", "was", "were", "be", "been", "being", "have", "has", "had",
+            "do", "does", "did", "will", "would", "could", "should", "may", "might",
+            "can", "please", "try", "click", "tap", "press", "open", "close", "go");
+
+    private static final String[] TYPE_TRIGGERS = {"type", "send", "write", "message"};
+    private static final String[] BARE_BACK = {"back", "go back", "press back"};
+    private static final String[] BARE_SCROLL_FORWARD = {"scroll down", "scroll forward"};
+    private static final String[] BARE_SCROLL_BACKWARD = {"scroll up", "scroll backward"};
+
+    // Rule confidences; RoutingEngine trusts matches at or above its threshold
+    public static final float CONFIDENCE_EXACT = 1.0f;
+    public static final float CONFIDENCE_PARTIAL = 0.6f;
+    public static final float CONFIDENCE_GUESS = 0.3f;
+    public static final float CONFIDENCE_NONE = 0f;
+
+    /**
+     * Rule-based action with how sure the rules are about it
+     */
+    public static class RuleMatch {
+        public final ActionModel action;
+        public final float confidence;
+
+        RuleMatch(ActionModel action, float confidence) {
+            this.action = action;
+            this.confidence = confidence;
+        }
+    }
+
     private Context context;
-    private Gson gson = new Gson();
     private Random random = new Random();
     
     // System prompt (same as real engine)
@@ -24,7 +75,7 @@ public class MockLLMEngine {
             "You only choose ONE next action.\n\n" +
             "You receive:\n" +
             "- User instruction\n" +
-            "- Structured UI JSON\n\n" +
+            "- Numbered UI elements (click, fields)\n\n" +
             "Return strictly valid JSON:\n" +
             "{\n" +
             "  \"action\": \"\",\n" +
@@ -39,106 +90,175 @@ public class MockLLMEngine {
             "- go_back\n" +
             "- nothing\n\n" +
             "Rules:\n" +
-            "- target must match exactly from clickable or text_fields\n" +
+            "- target is the number of an element from click or fields\n" +
             "- text only when action = type\n" +
             "- never hallucinate elements\n" +
             "- if unsure, return action = \"nothing\"\n" +
+            "- return action = \"nothing\" once the instruction is done\n" +
             "- output JSON only";
 
     public MockLLMEngine(Context context) {
         this.context = context;
     }
 
+    @Override
     public boolean initialize() {
         Log.i(TAG, "Mock LLM Engine initialized (simulation mode)");
         return true;
     }
 
+    /**
+     * Generate the next action of a multi-step task. The rules only know
+     * single actions, so the task is done once an action has been taken;
+     * matching again on the screen it led to would act on something else.
+     */
+    @Override
+    public ActionModel generateAction(String userInstruction, UIStructure uiStructure,
+                                      List<ActionModel> history) {
+        if (history != null && !history.isEmpty()) {
+            return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+        }
+        return generateAction(userInstruction, uiStructure);
+    }
+
     /**
      * Generate an action based on user instruction and UI structure
      * Uses simple rule-based logic for demonstration
      */
+    @Override
     public ActionModel generateAction(String userInstruction, UIStructure uiStructure) {
-        Log.i(TAG, "Processing instruction: " + userInstruction);
+        return matchRules(userInstruction, uiStructure).action;
+    }
+
+    /**
+     * Run the rules and report how confident they are in the result.
+     * Keyword dispatch and label matching do not allocate; only the
+     * resulting action does.
+     */
+    public RuleMatch matchRules(String userInstruction, UIStructure uiStructure) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Processing instruction: " + userInstruction);
+        }
         
-        String instruction = userInstruction.toLowerCase();
+        long intents = INTENTS.matchMask(userInstruction);
         
         // Check if user wants to type something
-        if (instruction.contains("type") || instruction.contains("send") || instruction.contains("write")) {
-            return handleTypeAction(userInstruction, uiStructure);
+        if ((intents & TYPE_INTENTS) != 0) {
+            ActionModel action = handleTypeAction(userInstruction, uiStructure);
+            return new RuleMatch(action, isNothing(action) ? CONFIDENCE_NONE : CONFIDENCE_PARTIAL);
         }
         
         // Check if user wants to scroll
-        if (instruction.contains("scroll")) {
-            return handleScrollAction(userInstruction, uiStructure);
+        if (KeywordMatcher.contains(intents, SCROLL)) {
+            return handleScrollAction(userInstruction);
         }
         
         // Check if user wants to go back
-        if (instruction.contains("back") || instruction.contains("go back")) {
-            return new ActionModel(ActionModel.ACTION_GO_BACK, "", "");
+        if (KeywordMatcher.contains(intents, BACK)) {
+            // Only a bare "back" command is certain; "go back to chats" may need more
+            boolean bare = isBareCommand(userInstruction, BARE_BACK);
+            return new RuleMatch(new ActionModel(ActionModel.ACTION_GO_BACK, "", ""),
+                    bare ? CONFIDENCE_EXACT : CONFIDENCE_PARTIAL);
         }
         
         // Check if user wants to open an app
-        if (instruction.startsWith("open ") || instruction.contains("launch")) {
-            String appName = extractAppName(instruction);
-            return new ActionModel(ActionModel.ACTION_OPEN_APP, appName, "");
+        if (userInstruction.regionMatches(true, 0, "open ", 0, 5) || KeywordMatcher.contains(intents, LAUNCH)) {
+            String appName = extractAppName(userInstruction);
+            return new RuleMatch(new ActionModel(ActionModel.ACTION_OPEN_APP, appName, ""),
+                    appName.isEmpty() ? CONFIDENCE_NONE : CONFIDENCE_PARTIAL);
         }
         
         // Check if user wants to click something
-        if (instruction.contains("click") || instruction.contains("tap") || instruction.contains("press")) {
+        if ((intents & CLICK_INTENTS) != 0) {
             return handleClickAction(userInstruction, uiStructure);
         }
         
         // Default: nothing
         Log.i(TAG, "No matching action found, returning nothing");
-        return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+        return new RuleMatch(new ActionModel(ActionModel.ACTION_NOTHING, "", ""), CONFIDENCE_NONE);
     }
 
-    private ActionModel handleClickAction(String instruction, UIStructure uiStructure) {
-        // Extract the target from the instruction
-        String[] words = instruction.split("\\s+");
-        String targetToFind = null;
+    private RuleMatch handleClickAction(String instruction, UIStructure uiStructure) {
+        // Target is the one or two words after the verb, else the first uncommon word
+        int targetStart = -1;
+        int targetEnd = -1;
+        int remainderStart = -1;
+        int end = instruction.length();
         
-        // Try to find a word that matches a clickable element
-        for (int i = 0; i < words.length; i++) {
-            if (words[i].equals("click") || words[i].equals("tap") || words[i].equals("press")) {
-                if (i + 1 < words.length) {
-                    targetToFind = words[i + 1];
-                    // Also include subsequent words if they exist
-                    if (i + 2 < words.length) {
-                        targetToFind += " " + words[i + 2];
+        for (int start = skipSpaces(instruction, 0); start < end; ) {
+            int wordEnd = wordEnd(instruction, start);
+            if (CLICK_VERBS.exactMatch(instruction, start, wordEnd) >= 0) {
+                int next = skipSpaces(instruction, wordEnd);
+                if (next < end) {
+                    targetStart = next;
+                    targetEnd = wordEnd(instruction, next);
+                    int third = skipSpaces(instruction, targetEnd);
+                    if (third < end) {
+                        targetEnd = wordEnd(instruction, third);
+                    }
+                    // "click on X" names X
+                    remainderStart = next;
+                    int afterOn = skipSpaces(instruction, wordEnd(instruction, next));
+                    if (afterOn < end && isWord(instruction, next, "on")) {
+                        remainderStart = afterOn;
                     }
                 }
                 break;
             }
+            start = skipSpaces(instruction, wordEnd);
         }
         
         // If no explicit target, look for keywords in instruction
-        if (targetToFind == null) {
-            for (String word : words) {
-                if (word.length() > 2 && !isCommonWord(word)) {
-                    targetToFind = word;
+        if (targetStart < 0 && remainderStart < 0) {
+            for (int start = skipSpaces(instruction, 0); start < end; ) {
+                int wordEnd = wordEnd(instruction, start);
+                if (wordEnd - start > 2 && COMMON_WORDS.exactMatch(instruction, start, wordEnd) < 0) {
+                    targetStart = start;
+                    targetEnd = wordEnd;
                     break;
                 }
+                start = skipSpaces(instruction, wordEnd);
             }
         }
         
-        // Search for matching clickable element
-        if (uiStructure.clickable != null && targetToFind != null) {
-            for (String clickable : uiStructure.clickable) {
-                if (clickable.toLowerCase().contains(targetToFind.toLowerCase()) ||
-                    targetToFind.toLowerCase().contains(clickable.toLowerCase())) {
-                    return new ActionModel(ActionModel.ACTION_CLICK, clickable, "");
+        String[] clickable = uiStructure.clickable;
+        if (clickable != null) {
+            // Everything after the verb naming a label exactly is an exact click
+            if (remainderStart >= 0) {
+                int remainderEnd = trimEnd(instruction, end);
+                int length = remainderEnd - remainderStart;
+                for (String label : clickable) {
+                    if (label.length() == length && instruction.regionMatches(true, remainderStart, label, 0, length)) {
+                        return new RuleMatch(new ActionModel(ActionModel.ACTION_CLICK, label, ""),
+                                CONFIDENCE_EXACT);
+                    }
                 }
             }
+            
+            // Search for matching clickable element
+            if (targetStart >= 0) {
+                String[] lowerClickable = uiStructure.getLowerClickable();
+                for (int i = 0; i < clickable.length; i++) {
+                    if (labelContains(lowerClickable[i], instruction, targetStart, targetEnd) ||
+                            rangeContains(instruction, targetStart, targetEnd, lowerClickable[i])) {
+                        return new RuleMatch(new ActionModel(ActionModel.ACTION_CLICK, clickable[i], ""),
+                                CONFIDENCE_PARTIAL);
+                    }
+                }
+            }
+            
+            // If still no match, try first clickable element
+            if (clickable.length > 0) {
+                return new RuleMatch(new ActionModel(ActionModel.ACTION_CLICK, clickable[0], ""),
+                        CONFIDENCE_GUESS);
+            }
         }
         
-        // If still no match, try first clickable element
-        if (uiStructure.clickable != null && uiStructure.clickable.length > 0) {
-            return new ActionModel(ActionModel.ACTION_CLICK, uiStructure.clickable[0], "");
-        }
-        
-        return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+        return new RuleMatch(new ActionModel(ActionModel.ACTION_NOTHING, "", ""), CONFIDENCE_NONE);
+    }
+
+    private static boolean isNothing(ActionModel action) {
+        return ActionModel.ACTION_NOTHING.equals(action.action);
     }
 
     private ActionModel handleTypeAction(String instruction, UIStructure uiStructure) {
@@ -146,13 +266,13 @@ public class MockLLMEngine {
         String textToType = "";
         
         // Extract text after "type", "send", or "write"
-        String[] triggerWords = {"type", "send", "write", "message"};
-        for (String trigger : triggerWords) {
+        for (String trigger : TYPE_TRIGGERS) {
             int idx = instruction.indexOf(trigger);
             if (idx >= 0) {
                 String after = instruction.substring(idx + trigger.length()).trim();
                 // Remove common prefixes
-                after = after.replaceFirst("^(to|in|to the)\\s+", "");
+                after = stripLeadingWord(after, "to");
+                after = stripLeadingWord(after, "in");
                 if (!after.isEmpty()) {
                     textToType = after;
                     break;
@@ -175,47 +295,154 @@ public class MockLLMEngine {
         return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
     }
 
-    private ActionModel handleScrollAction(String instruction, UIStructure uiStructure) {
-        if (instruction.contains("down") || instruction.contains("forward")) {
-            return new ActionModel(ActionModel.ACTION_SCROLL, "forward", "");
-        } else if (instruction.contains("up") || instruction.contains("backward")) {
-            return new ActionModel(ActionModel.ACTION_SCROLL, "backward", "");
+    private RuleMatch handleScrollAction(String instruction) {
+        // Only a bare "scroll down" is certain; "scroll down and tap Wi-Fi" needs the model
+        if (isBareCommand(instruction, BARE_SCROLL_FORWARD)) {
+            return new RuleMatch(new ActionModel(ActionModel.ACTION_SCROLL, "forward", ""), CONFIDENCE_EXACT);
+        }
+        if (isBareCommand(instruction, BARE_SCROLL_BACKWARD)) {
+            return new RuleMatch(new ActionModel(ActionModel.ACTION_SCROLL, "backward", ""), CONFIDENCE_EXACT);
         }
         
-        // Default to scroll down
-        return new ActionModel(ActionModel.ACTION_SCROLL, "forward", "");
+        // Otherwise the first whole-word direction, defaulting to scroll down
+        String direction = findWord(instruction, SCROLL_DIRECTIONS) >= 2 ? "backward" : "forward";
+        return new RuleMatch(new ActionModel(ActionModel.ACTION_SCROLL, direction, ""), CONFIDENCE_PARTIAL);
     }
 
     private String extractAppName(String instruction) {
         // Extract app name from "open X" or "launch X"
-        String[] words = instruction.split("\\s+");
-        for (int i = 0; i < words.length; i++) {
-            if (words[i].equals("open") || words[i].equals("launch")) {
-                if (i + 1 < words.length) {
-                    return words[i + 1];
-                }
+        int end = instruction.length();
+        for (int start = skipSpaces(instruction, 0); start < end; ) {
+            int wordEnd = wordEnd(instruction, start);
+            int next = skipSpaces(instruction, wordEnd);
+            if (OPEN_VERBS.exactMatch(instruction, start, wordEnd) >= 0 && next < end) {
+                return instruction.substring(next, wordEnd(instruction, next)).toLowerCase(Locale.ROOT);
             }
+            start = next;
         }
         return "";
     }
 
-    private boolean isCommonWord(String word) {
-        String[] commonWords = {"the", "a", "an", "to", "in", "on", "at", "for", "of", "and", "or", "but", 
-                                "is", "are", "was", "were", "be", "been", "being", "have", "has", "had",
-                                "do", "does", "did", "will", "would", "could", "should", "may", "might",
-                                "can", "please", "try", "click", "tap", "press", "open", "close", "go"};
-        for (String common : commonWords) {
-            if (word.toLowerCase().equals(common)) {
+    /**
+     * Id of the first word of text that is one of the keywords, or -1.
+     * Words are runs of letters and digits, so "group" is not "up".
+     */
+    private static int findWord(String text, KeywordMatcher keywords) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(text.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && Character.isLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end > start) {
+                int id = keywords.exactMatch(text, start, end);
+                if (id >= 0) {
+                    return id;
+                }
+            }
+            start = end;
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the trimmed instruction equals one of the commands, ignoring case
+     */
+    private static boolean isBareCommand(String instruction, String[] commands) {
+        int start = skipSpaces(instruction, 0);
+        int length = trimEnd(instruction, instruction.length()) - start;
+        for (String command : commands) {
+            if (command.length() == length && instruction.regionMatches(true, start, command, 0, length)) {
                 return true;
             }
         }
         return false;
     }
 
+    private static boolean isWord(String text, int start, String word) {
+        return wordEnd(text, start) - start == word.length()
+                && text.regionMatches(true, start, word, 0, word.length());
+    }
+
+    /**
+     * Whether lowerLabel contains text[start, end), ignoring case
+     */
+    private static boolean labelContains(String lowerLabel, String text, int start, int end) {
+        int length = end - start;
+        for (int offset = 0; offset + length <= lowerLabel.length(); offset++) {
+            if (regionEqualsLower(text, start, lowerLabel, offset, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether text[start, end) contains lowerLabel, ignoring case
+     */
+    private static boolean rangeContains(String text, int start, int end, String lowerLabel) {
+        int length = lowerLabel.length();
+        for (int offset = start; offset + length <= end; offset++) {
+            if (regionEqualsLower(text, offset, lowerLabel, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEqualsLower(String text, int textOffset, String lower, int lowerOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Character.toLowerCase(text.charAt(textOffset + i)) != lower.charAt(lowerOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripLeadingWord(String text, String word) {
+        int length = word.length();
+        if (text.length() > length && text.startsWith(word) && Character.isWhitespace(text.charAt(length))) {
+            return text.substring(skipSpaces(text, length));
+        }
+        return text;
+    }
+
+    private static int skipSpaces(String text, int index) {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int wordEnd(String text, int index) {
+        while (index < text.length() && !Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int trimEnd(String text, int end) {
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    @Override
     public boolean isReady() {
         return true;
     }
 
+    @Override
+    public void cancelGeneration() {
+        // Rules finish instantly, nothing to abort
+    }
+
+    @Override
     public void cleanup() {
         Log.i(TAG, "Mock LLM Engine cleaned up");
     }
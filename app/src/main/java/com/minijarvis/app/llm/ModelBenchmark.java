@@ -0,0 +1,149 @@
+package com.minijarvis.app.llm;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decode speed of every installed model variant on this device. Each
+ * variant is loaded on an engine of its own in turn, so only one model is
+ * in memory at a time. Results are appended to a JSON file under
+ * files/benchmarks/ to compare devices and builds.
+ */
+public class ModelBenchmark {
+    private static final String TAG = "ModelBenchmark";
+    private static final String RESULTS_DIR = "benchmarks";
+    private static final String RESULTS_FILE = "model_tps.json";
+    // Oldest results are dropped beyond this
+    private static final int MAX_RESULTS = 100;
+    private static final int RUNS = 3;
+
+    /**
+     * Speed of one variant, the median of RUNS decodes
+     */
+    public static class Result {
+        @SerializedName("id")
+        public String id;
+
+        @SerializedName("quantization")
+        public String quantization;
+
+        @SerializedName("context_length")
+        public int contextLength;
+
+        @SerializedName("load_ms")
+        public long loadMs;
+
+        @SerializedName("tokens_per_second")
+        public float tokensPerSecond;
+
+        @SerializedName("timestamp")
+        public long timestamp;
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f tokens/s (load %d ms)", id, tokensPerSecond, loadMs);
+        }
+    }
+
+    private ModelBenchmark() {
+    }
+
+    /**
+     * Measure every installed variant and append the results to the results
+     * file. Blocks for several seconds per variant; the shared engine should
+     * be unloaded first.
+     */
+    public static List<Result> run(Context context) {
+        ModelManager modelManager = ModelManager.getInstance(context);
+        List<Result> results = new ArrayList<>();
+        for (ModelVariant variant : modelManager.getInstalledVariants()) {
+            LLMEngine engine = new LLMEngine(context);
+            engine.setVariant(variant);
+            try {
+                if (!engine.initialize()) {
+                    Log.w(TAG, "Cannot load " + variant + ", skipped");
+                    continue;
+                }
+                float[] speeds = new float[RUNS];
+                for (int i = 0; i < RUNS; i++) {
+                    speeds[i] = engine.measureTokensPerSecond();
+                }
+                Arrays.sort(speeds);
+
+                Result result = new Result();
+                result.id = variant.getId();
+                result.quantization = variant.getQuantization();
+                result.contextLength = variant.getContextLength();
+                result.loadMs = engine.getModelLoadMs();
+                result.tokensPerSecond = speeds[RUNS / 2];
+                result.timestamp = System.currentTimeMillis();
+                results.add(result);
+                Log.i(TAG, result.toString());
+            } finally {
+                engine.cleanup();
+            }
+        }
+        save(context, results);
+        return results;
+    }
+
+    private static void save(Context context, List<Result> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        File dir = new File(context.getFilesDir(), RESULTS_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File file = new File(dir, RESULTS_FILE);
+        Gson gson = GsonProvider.get();
+
+        List<Result> all = new ArrayList<>();
+        if (file.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                List<Result> previous = gson.fromJson(reader, new TypeToken<List<Result>>() {}.getType());
+                if (previous != null) {
+                    all.addAll(previous);
+                }
+            } catch (IOException | JsonParseException e) {
+                Log.w(TAG, "Discarding unreadable benchmark results", e);
+            }
+        }
+        all.addAll(results);
+        if (all.size() > MAX_RESULTS) {
+            all = new ArrayList<>(all.subList(all.size() - MAX_RESULTS, all.size()));
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(all, writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write benchmark results", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Cannot replace benchmark results");
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.minijarvis.app.llm;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.minijarvis.app.service.ChunkManifest;
+import com.minijarvis.app.service.SegmentedDownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Process-wide owner of the model files: where they are stored, which
+ * registry variant is active, whether a file is valid, and the download
+ * that produces it. All writes to the model directory run on one thread
+ * here, so a file never has two writers. Download progress is pushed to
+ * every registered Listener, which is how both the download notification
+ * and the download screen follow it.
+ */
+public class ModelManager {
+    private static final String TAG = "ModelManager";
+    static final String MODEL_DIR = "models";
+    private static final String MODEL_EXT = ".gguf";
+    private static final int DOWNLOAD_SEGMENTS = 4;
+    // Listeners hear about progress at most this often
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
+    private static ModelManager instance;
+
+    public enum State {
+        NOT_DOWNLOADED,
+        DOWNLOADING,
+        VERIFYING,
+        READY,
+        FAILED
+    }
+
+    /**
+     * Snapshot of the model's download state
+     */
+    public static class Status {
+        public final State state;
+        public final long downloadedBytes;
+        public final long totalBytes;
+        // Set for FAILED
+        public final String error;
+
+        Status(State state, long downloadedBytes, long totalBytes, String error) {
+            this.state = state;
+            this.downloadedBytes = downloadedBytes;
+            this.totalBytes = totalBytes;
+            this.error = error;
+        }
+
+        public int getPercent() {
+            return totalBytes > 0 ? (int) (downloadedBytes * 100 / totalBytes) : 0;
+        }
+
+        public boolean isRunning() {
+            return state == State.DOWNLOADING || state == State.VERIFYING;
+        }
+    }
+
+    /**
+     * Called on the download thread on every state change, and at most once
+     * per progress interval while downloading
+     */
+    public interface Listener {
+        void onModelStatus(Status status);
+    }
+
+    private final File modelDir;
+    private final ModelRegistry registry;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "MiniJarvis-ModelManager"));
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private Future<?> task;
+    private volatile Status status;
+    private volatile ModelVariant activeVariant;
+
+    private ModelManager(Context context) {
+        modelDir = new File(context.getFilesDir(), MODEL_DIR);
+        registry = ModelRegistry.load(context);
+        // Until select() knows the memory budget: the largest installed variant, else the smallest
+        activeVariant = registry.select(Long.MAX_VALUE, getInstalledIds());
+        if (!isInstalled(activeVariant)) {
+            activeVariant = registry.select(0, getInstalledIds());
+        }
+    }
+
+    public static synchronized ModelManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public ModelRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * The variant that is loaded, downloaded and validated by default
+     */
+    public ModelVariant getActiveVariant() {
+        return activeVariant;
+    }
+
+    /**
+     * Make variant the active one; a download already running keeps the
+     * variant it started with
+     */
+    public void setActiveVariant(ModelVariant variant) {
+        if (variant != activeVariant) {
+            Log.i(TAG, "Active model: " + variant);
+            activeVariant = variant;
+        }
+    }
+
+    /**
+     * Activate the largest installed variant that fits ramBudget, or if none
+     * does, the largest that would fit once downloaded
+     */
+    public ModelVariant select(long ramBudget) {
+        ModelVariant variant = registry.select(ramBudget, getInstalledIds());
+        setActiveVariant(variant);
+        return variant;
+    }
+
+    /**
+     * Largest installed variant needing less memory than current, or null
+     */
+    public ModelVariant getSmallerInstalled(ModelVariant current) {
+        return registry.smallerInstalled(current, getInstalledIds());
+    }
+
+    /**
+     * Variants whose files are present and valid, largest first
+     */
+    public List<ModelVariant> getInstalledVariants() {
+        List<ModelVariant> installed = new ArrayList<>();
+        for (ModelVariant variant : registry.getVariants()) {
+            if (isInstalled(variant)) {
+                installed.add(variant);
+            }
+        }
+        return installed;
+    }
+
+    public File getModelFile() {
+        return getModelFile(activeVariant);
+    }
+
+    public File getModelFile(ModelVariant variant) {
+        return new File(modelDir, variant.getFileName());
+    }
+
+    /**
+     * Whether the active model is present and valid
+     */
+    public boolean isModelReady() {
+        return isInstalled(activeVariant);
+    }
+
+    /**
+     * Whether the variant's file is present and valid. A file with a chunk
+     * manifest needs a current verification stamp; one downloaded before
+     * manifests existed only gets a size check. Reads no file data.
+     */
+    public boolean isInstalled(ModelVariant variant) {
+        File modelFile = getModelFile(variant);
+        if (!modelFile.exists()) {
+            return false;
+        }
+        ChunkManifest manifest = ChunkManifest.load(modelFile);
+        if (manifest != null) {
+            return manifest.hasValidStamp(modelFile);
+        }
+        return modelFile.length() >= minLegacySize(variant);
+    }
+
+    /**
+     * Whether a paused or interrupted download of the active model can be resumed
+     */
+    public boolean hasPartialDownload() {
+        return downloaderFor(activeVariant).hasPartialDownload();
+    }
+
+    /**
+     * Current state; the live one while a download or verification runs
+     */
+    public synchronized Status getStatus() {
+        if (isRunning() || status != null && status.state == State.FAILED) {
+            return status;
+        }
+        return new Status(isModelReady() ? State.READY : State.NOT_DOWNLOADED, 0, 0, null);
+    }
+
+    /**
+     * Make sure the model is present: verify and repair an existing file, or
+     * download (resume) it. A no-op while already running, so concurrent
+     * callers share one download.
+     *
+     * @return false if a download or verification was already running
+     */
+    public synchronized boolean start() {
+        if (isRunning()) {
+            return false;
+        }
+        status = new Status(State.DOWNLOADING, 0, 0, null);
+        ModelVariant variant = activeVariant;
+        task = worker.submit(() -> ensureModel(variant));
+        return true;
+    }
+
+    /**
+     * Stop a running download, keeping its journal for the next start()
+     */
+    public synchronized void pause() {
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Stop a running download and discard what it fetched so far
+     */
+    public synchronized void cancel() {
+        pause();
+        // Queued behind the cancelled task, so it runs once that one let go of the files
+        worker.execute(downloaderFor(activeVariant)::discardPartialDownload);
+    }
+
+    /**
+     * Withdraw the verification stamp, e.g. after the file failed to load,
+     * so the next start() rehashes it and re-fetches only corrupt chunks. A
+     * model without manifest has nothing to repair from and is deleted.
+     */
+    public synchronized void invalidate(ModelVariant variant) {
+        if (isRunning()) {
+            return;
+        }
+        File modelFile = getModelFile(variant);
+        if (ChunkManifest.load(modelFile) != null) {
+            ChunkManifest.invalidate(modelFile);
+        } else if (modelFile.exists() && !isInstalled(variant)) {
+            modelFile.delete();
+        }
+    }
+
+    /**
+     * Delete the active model and its manifest, e.g. before downloading it
+     * again. Refused while a download or verification is running.
+     */
+    public synchronized boolean deleteModel() {
+        if (isRunning()) {
+            Log.w(TAG, "Not deleting the model while it is being written");
+            return false;
+        }
+        status = null;
+        File modelFile = getModelFile();
+        ChunkManifest.delete(modelFile);
+        return !modelFile.exists() || modelFile.delete();
+    }
+
+    private boolean isRunning() {
+        return task != null && !task.isDone();
+    }
+
+    private void ensureModel(ModelVariant variant) {
+        try {
+            if (!modelDir.exists()) {
+                modelDir.mkdirs();
+            }
+            deleteStaleVersions();
+
+            File modelFile = getModelFile(variant);
+            SegmentedDownloader downloader = downloaderFor(variant);
+            if (modelFile.exists() && verifyModel(variant, downloader)) {
+                publish(new Status(State.READY, modelFile.length(), modelFile.length(), null));
+                return;
+            }
+
+            Log.i(TAG, "Starting download of " + variant + " from: " + variant.getUrl());
+            publish(new Status(State.DOWNLOADING, 0, 0, null));
+            // Parallel ranged download; resumes from the journal after a restart. A published
+            // checksum is instead taken from one in-order stream, sparing a full read afterwards.
+            downloader.setHashWholeFile(variant.getSha256() != null);
+            long total = downloader.download();
+            if (variant.getSha256() != null) {
+                // Roots the chunk manifest in the published checksum
+                String digest = downloader.getFileSha256();
+                if (digest == null) {
+                    // Resumed from a parallel download, whose ranges were not hashed in order
+                    publish(new Status(State.VERIFYING, 0, total, null));
+                    digest = ChunkManifest.digestOf(modelFile);
+                }
+                if (!variant.getSha256().equalsIgnoreCase(digest)) {
+                    ChunkManifest.delete(modelFile);
+                    modelFile.delete();
+                    throw new IOException("Checksum mismatch for " + variant.getId() + ": " + digest);
+                }
+            }
+            Log.i(TAG, "Model downloaded successfully: " + total + " bytes");
+            publish(new Status(State.READY, total, total, null));
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Download interrupted");
+            publish(new Status(State.NOT_DOWNLOADED, 0, 0, null));
+        } catch (Exception e) {
+            Log.e(TAG, "Download failed", e);
+            publish(new Status(State.FAILED, 0, 0, e.getMessage()));
+        }
+    }
+
+    /**
+     * Check the existing model against its chunk manifest and re-fetch only
+     * the chunks that differ. A current stamp skips the rehash.
+     *
+     * @return false if the model has to be downloaded again
+     */
+    private boolean verifyModel(ModelVariant variant, SegmentedDownloader downloader) throws InterruptedException {
+        File modelFile = getModelFile(variant);
+        ChunkManifest manifest = ChunkManifest.load(modelFile);
+        if (manifest == null) {
+            // Downloaded before manifests existed, only its size can be checked
+            return modelFile.length() >= minLegacySize(variant);
+        }
+        if (manifest.hasValidStamp(modelFile)) {
+            return true;
+        }
+
+        publish(new Status(State.VERIFYING, 0, manifest.getSize(), null));
+        try {
+            List<Integer> corrupt = manifest.findCorruptChunks(modelFile);
+            downloader.repair(manifest, corrupt);
+            Log.i(TAG, "Model verified, " + corrupt.size() + " chunks re-fetched");
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot repair model, downloading it again", e);
+            return false;
+        }
+    }
+
+    /**
+     * Remove model files no registry variant refers to any more, with their
+     * manifests, journals and caches
+     */
+    private void deleteStaleVersions() {
+        File[] files = modelDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.indexOf(MODEL_EXT) > 0 && !isRegistered(name)) {
+                Log.i(TAG, "Deleting stale model file " + name + ": " + file.delete());
+            }
+        }
+    }
+
+    // name is a variant's file or one of its side files
+    private boolean isRegistered(String name) {
+        for (ModelVariant variant : registry.getVariants()) {
+            if (name.equals(variant.getFileName()) || name.startsWith(variant.getFileName() + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> getInstalledIds() {
+        Set<String> ids = new HashSet<>();
+        for (ModelVariant variant : registry.getVariants()) {
+            if (isInstalled(variant)) {
+                ids.add(variant.getId());
+            }
+        }
+        return ids;
+    }
+
+    private SegmentedDownloader downloaderFor(ModelVariant variant) {
+        return new SegmentedDownloader(url(variant), getModelFile(variant))
+                .setSegments(DOWNLOAD_SEGMENTS)
+                .setProgressInterval(PROGRESS_INTERVAL_MS)
+                .setProgressListener((downloaded, total) ->
+                        publish(new Status(State.DOWNLOADING, downloaded, total, null)));
+    }
+
+    // Files from before the manifest existed must be nearly the registered size
+    private static long minLegacySize(ModelVariant variant) {
+        return variant.getSizeBytes() * 9 / 10;
+    }
+
+    private void publish(Status newStatus) {
+        status = newStatus;
+        for (Listener listener : listeners) {
+            listener.onModelStatus(newStatus);
+        }
+    }
+
+    private static URL url(ModelVariant variant) {
+        try {
+            return new URL(variant.getUrl());
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Bad URL for " + variant.getId(), e);
+        }
+    }
+}
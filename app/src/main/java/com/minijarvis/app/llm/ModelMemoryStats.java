@@ -0,0 +1,104 @@
+package com.minijarvis.app.llm;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * How much of a memory-mapped model file this process maps, holds resident
+ * and has locked, read from /proc/self/smaps. Resident pages of a read-only
+ * file mapping are page cache the kernel can drop and re-read, unlike
+ * anonymous heap.
+ */
+public class ModelMemoryStats {
+    private static final String TAG = "ModelMemoryStats";
+    private static final String SMAPS = "/proc/self/smaps";
+
+    public final long mappedBytes;
+    public final long residentBytes;
+    public final long lockedBytes;
+
+    ModelMemoryStats(long mappedBytes, long residentBytes, long lockedBytes) {
+        this.mappedBytes = mappedBytes;
+        this.residentBytes = residentBytes;
+        this.lockedBytes = lockedBytes;
+    }
+
+    /**
+     * Sum the mappings of modelFile in this process. All zero if the file is
+     * not mapped (e.g. the model was read into heap or is not loaded).
+     */
+    public static ModelMemoryStats read(File modelFile) {
+        String path = modelFile.getAbsolutePath();
+        long mapped = 0;
+        long resident = 0;
+        long locked = 0;
+        boolean inModel = false;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(SMAPS))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (isMappingHeader(line)) {
+                    inModel = line.endsWith(path);
+                } else if (inModel) {
+                    if (line.startsWith("Size:")) {
+                        mapped += parseKb(line);
+                    } else if (line.startsWith("Rss:")) {
+                        resident += parseKb(line);
+                    } else if (line.startsWith("Locked:")) {
+                        locked += parseKb(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + SMAPS, e);
+        }
+        return new ModelMemoryStats(mapped, resident, locked);
+    }
+
+    /**
+     * Fraction of the mapping currently in RAM
+     */
+    public float getResidentRatio() {
+        return mappedBytes > 0 ? (float) residentBytes / mappedBytes : 0f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "mapped %d MB, resident %d MB (%.0f%%), locked %d MB",
+                mappedBytes >> 20, residentBytes >> 20, getResidentRatio() * 100, lockedBytes >> 20);
+    }
+
+    // Header lines look like "7f12340000-7f12350000 r--s 00000000 fd:01 1234 /path"
+    private static boolean isMappingHeader(String line) {
+        int space = line.indexOf(' ');
+        if (space <= 0 || line.indexOf('-') <= 0 || line.indexOf('-') > space) {
+            return false;
+        }
+        for (int i = 0; i < space; i++) {
+            char c = line.charAt(i);
+            if (c != '-' && Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Field lines look like "Rss:     123456 kB"
+    private static long parseKb(String line) {
+        int start = line.indexOf(':') + 1;
+        int end = line.lastIndexOf(" kB");
+        if (end < start) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(line.substring(start, end).trim()) * 1024;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.minijarvis.app.llm;
+
+/**
+ * Raised when an instruction needs the model but it is not loaded, e.g.
+ * still warming up or unloaded under memory pressure
+ */
+public class ModelNotReadyException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public ModelNotReadyException(String message) {
+        super(message);
+    }
+}
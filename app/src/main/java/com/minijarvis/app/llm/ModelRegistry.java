@@ -0,0 +1,112 @@
+package com.minijarvis.app.llm;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Catalogue of the model variants the app can download, read from the
+ * "models.json" asset. Picks the largest variant that fits a memory budget,
+ * preferring what is already installed.
+ */
+public class ModelRegistry {
+    private static final String TAG = "ModelRegistry";
+    static final String ASSET = "models.json";
+
+    @SerializedName("models")
+    List<ModelVariant> models;
+
+    public static ModelRegistry load(Context context) {
+        try (Reader reader = new InputStreamReader(context.getAssets().open(ASSET), StandardCharsets.UTF_8)) {
+            return fromJson(reader);
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalStateException("Cannot read model registry " + ASSET, e);
+        }
+    }
+
+    /**
+     * Parse a registry, dropping incomplete entries. Variants are kept
+     * largest first.
+     */
+    public static ModelRegistry fromJson(Reader reader) {
+        ModelRegistry registry = GsonProvider.get().fromJson(reader, ModelRegistry.class);
+        List<ModelVariant> valid = new ArrayList<>();
+        if (registry != null && registry.models != null) {
+            for (ModelVariant variant : registry.models) {
+                if (variant != null && variant.isComplete()) {
+                    valid.add(variant);
+                } else {
+                    Log.w(TAG, "Skipping incomplete registry entry " + (variant != null ? variant.id : null));
+                }
+            }
+        }
+        if (valid.isEmpty()) {
+            throw new JsonParseException("Model registry has no usable entry");
+        }
+        Collections.sort(valid, (a, b) -> Long.compare(b.getRequiredRamBytes(), a.getRequiredRamBytes()));
+        ModelRegistry sorted = new ModelRegistry();
+        sorted.models = Collections.unmodifiableList(valid);
+        return sorted;
+    }
+
+    /**
+     * All variants, largest memory requirement first
+     */
+    public List<ModelVariant> getVariants() {
+        return models;
+    }
+
+    public ModelVariant get(String id) {
+        for (ModelVariant variant : models) {
+            if (variant.id.equals(id)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Largest installed variant that fits ramBudget; else the largest that
+     * fits at all, to be downloaded; else the smallest there is
+     */
+    public ModelVariant select(long ramBudget, Set<String> installed) {
+        ModelVariant fitting = null;
+        for (ModelVariant variant : models) {
+            if (variant.getRequiredRamBytes() > ramBudget) {
+                continue;
+            }
+            if (installed.contains(variant.id)) {
+                return variant;
+            }
+            if (fitting == null) {
+                fitting = variant;
+            }
+        }
+        return fitting != null ? fitting : models.get(models.size() - 1);
+    }
+
+    /**
+     * Largest installed variant that needs less memory than current, or
+     * null if there is none to fall back to
+     */
+    public ModelVariant smallerInstalled(ModelVariant current, Set<String> installed) {
+        for (ModelVariant variant : models) {
+            if (variant.getRequiredRamBytes() < current.getRequiredRamBytes() && installed.contains(variant.id)) {
+                return variant;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.minijarvis.app.llm;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * One entry of the model registry: a model at one quantization, with what
+ * it takes to download and run it
+ */
+public class ModelVariant {
+    // Compute buffers, scratch and the native runtime on top of weights and KV cache
+    private static final long RUNTIME_OVERHEAD_BYTES = 256L * 1024 * 1024;
+
+    @SerializedName("id")
+    String id;
+
+    @SerializedName("family")
+    String family;
+
+    @SerializedName("quantization")
+    String quantization;
+
+    @SerializedName("url")
+    String url;
+
+    // Name under the models directory
+    @SerializedName("file")
+    String fileName;
+
+    // Download size; the exact length comes from the server
+    @SerializedName("size_bytes")
+    long sizeBytes;
+
+    @SerializedName("context_length")
+    int contextLength;
+
+    @SerializedName("kv_bytes_per_token")
+    long kvBytesPerToken;
+
+    // SHA-256 of the whole file, checked against the download stream; optional
+    @SerializedName("sha256")
+    String sha256;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFamily() {
+        return family;
+    }
+
+    public String getQuantization() {
+        return quantization;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public int getContextLength() {
+        return contextLength;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Memory the variant needs while loaded: weights, a full KV cache and
+     * runtime overhead
+     */
+    public long getRequiredRamBytes() {
+        return sizeBytes + contextLength * kvBytesPerToken + RUNTIME_OVERHEAD_BYTES;
+    }
+
+    boolean isComplete() {
+        return id != null && url != null && fileName != null && sizeBytes > 0 && contextLength > 0;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + quantization + ", ctx " + contextLength + ", " + sizeBytes / (1024 * 1024) + " MB)";
+    }
+}
@@ -0,0 +1,104 @@
+package com.minijarvis.app.llm;
+
+import android.util.Log;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hybrid backend: trivial commands ("go back", "scroll down", clicks on an
+ * exact label) are answered by the MockLLMEngine rules, and only
+ * instructions the rules are unsure about reach the model. While the model
+ * is not loaded those fail with ModelNotReadyException rather than acting
+ * on a weak rule guess.
+ */
+public class RoutingEngine implements InferenceEngine {
+    private static final String TAG = "RoutingEngine";
+    public static final float DEFAULT_THRESHOLD = 0.9f;
+
+    private final MockLLMEngine rules;
+    private final InferenceEngine model;
+    private volatile float threshold = DEFAULT_THRESHOLD;
+
+    // Only incremented on the inference thread
+    private volatile int ruleHits = 0;
+    private volatile int modelCalls = 0;
+
+    public RoutingEngine(MockLLMEngine rules, InferenceEngine model) {
+        this.rules = rules;
+        this.model = model;
+    }
+
+    /**
+     * Minimum rule confidence to skip the model
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean initialize() {
+        // The model is loaded by its owner (EngineHolder), only the rules are ours
+        return rules.initialize();
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public ActionModel generateAction(String userInstruction, UIStructure uiStructure) {
+        return generateAction(userInstruction, uiStructure, Collections.<ActionModel>emptyList());
+    }
+
+    @Override
+    public ActionModel generateAction(String userInstruction, UIStructure uiStructure,
+                                      List<ActionModel> history) {
+        MockLLMEngine.RuleMatch match = rules.matchRules(userInstruction, uiStructure);
+        if (match.confidence >= threshold) {
+            ruleHits++;
+            // A rule command is a single action, done once it has been taken
+            if (history != null && !history.isEmpty()) {
+                return new ActionModel(ActionModel.ACTION_NOTHING, "", "");
+            }
+            return match.action;
+        }
+
+        if (!model.isReady()) {
+            Log.i(TAG, "Model not ready for rule match with confidence " + match.confidence);
+            throw new ModelNotReadyException("Model not ready");
+        }
+        modelCalls++;
+        Log.i(TAG, "Rule confidence " + match.confidence + " below " + threshold + ", using model");
+        return model.generateAction(userInstruction, uiStructure, history);
+    }
+
+    @Override
+    public void cancelGeneration() {
+        model.cancelGeneration();
+    }
+
+    @Override
+    public void cleanup() {
+        // The model is shared and released through its owner
+        rules.cleanup();
+    }
+
+    /**
+     * Decisions answered by the rules
+     */
+    public int getRuleHits() {
+        return ruleHits;
+    }
+
+    /**
+     * Decisions that went to the model
+     */
+    public int getModelCalls() {
+        return modelCalls;
+    }
+}
@@ -37,4 +37,45 @@ public class ActionModel {
     public boolean isValid() {
         return action != null && !action.isEmpty();
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ActionModel)) {
+            return false;
+        }
+        ActionModel other = (ActionModel) o;
+        return equal(action, other.action) &&
+                equal(target, other.target) &&
+                equal(text, other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = action != null ? action.hashCode() : 0;
+        result = 31 * result + (target != null ? target.hashCode() : 0);
+        result = 31 * result + (text != null ? text.hashCode() : 0);
+        return result;
+    }
+
+    /**
+     * Short form used in logs and action history, e.g. "type Message: hello"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.valueOf(action));
+        if (target != null && !target.isEmpty()) {
+            sb.append(' ').append(target);
+        }
+        if (text != null && !text.isEmpty()) {
+            sb.append(": ").append(text);
+        }
+        return sb.toString();
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
\ No newline at end of file
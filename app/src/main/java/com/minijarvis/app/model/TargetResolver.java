@@ -0,0 +1,313 @@
+package com.minijarvis.app.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps near-miss action targets ("send", "Send ", "Cafe" for "Café", "wifi"
+ * for "Wi-Fi") to the exact label of a UIStructure element. Labels that only
+ * differ in case, whitespace, diacritics or punctuation match outright;
+ * anything else is looked up through a trigram index and scored by edit
+ * distance, but only counts when every word agrees with the label's word in
+ * the same place. Short words and numbers must be equal, so "turn on" never
+ * becomes "Turn off" and "send" never becomes "Sent". A near miss only
+ * resolves when a single element is clearly the closest one above the
+ * threshold.
+ */
+public class TargetResolver {
+    public static final int CLICKABLE = 1;
+    public static final int FIELD = 2;
+
+    public static final float DEFAULT_THRESHOLD = 0.75f;
+    // Runner-up must score this much lower for the best match to count as unique
+    private static final float AMBIGUITY_MARGIN = 0.1f;
+    // Trigram overlap below this is not worth an edit distance check
+    private static final float MIN_DICE = 0.3f;
+    // Words shorter than this must match exactly, longer ones may have one typo
+    private static final int MIN_TYPO_WORD = 5;
+    private static final int AMBIGUOUS = -1;
+
+    private final String[] labels;
+    private final String[] normalized;
+    private final int[] kinds;
+    private final int[] gramCounts;
+    // Normalized label without spaces -> label index, AMBIGUOUS if several labels normalize alike
+    private final Map<String, Integer> exact = new HashMap<>();
+    private final Map<Long, int[]> postings = new HashMap<>();
+    private float threshold = DEFAULT_THRESHOLD;
+
+    public TargetResolver(UIStructure uiStructure) {
+        Map<String, Integer> labelKinds = new LinkedHashMap<>();
+        addAll(labelKinds, uiStructure.clickable, CLICKABLE);
+        addAll(labelKinds, uiStructure.textFields, FIELD);
+        if (uiStructure.focused != null && !uiStructure.focused.isEmpty()) {
+            add(labelKinds, uiStructure.focused, FIELD);
+        }
+
+        int count = labelKinds.size();
+        labels = new String[count];
+        normalized = new String[count];
+        kinds = new int[count];
+        gramCounts = new int[count];
+        Map<Long, List<Integer>> grams = new HashMap<>();
+
+        int id = 0;
+        for (Map.Entry<String, Integer> entry : labelKinds.entrySet()) {
+            labels[id] = entry.getKey();
+            kinds[id] = entry.getValue();
+            normalized[id] = normalize(entry.getKey());
+
+            String key = compact(normalized[id]);
+            Integer previous = exact.put(key, id);
+            if (previous != null) {
+                exact.put(key, AMBIGUOUS);
+            }
+
+            long[] labelGrams = trigrams(normalized[id]);
+            gramCounts[id] = labelGrams.length;
+            for (long gram : labelGrams) {
+                List<Integer> ids = grams.get(gram);
+                if (ids == null) {
+                    ids = new ArrayList<>(4);
+                    grams.put(gram, ids);
+                }
+                ids.add(id);
+            }
+            id++;
+        }
+
+        for (Map.Entry<Long, List<Integer>> entry : grams.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            postings.put(entry.getKey(), array);
+        }
+    }
+
+    /**
+     * Minimum similarity (0..1) for a near miss to resolve
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Exact label of the element target refers to, or null if there is no
+     * unique close match among elements of the given kinds
+     *
+     * @param kindMask CLICKABLE, FIELD or both
+     */
+    public String resolve(String target, int kindMask) {
+        if (target == null || labels.length == 0) {
+            return null;
+        }
+        String query = normalize(target);
+        if (query.isEmpty()) {
+            return null;
+        }
+
+        Integer exactId = exact.get(compact(query));
+        if (exactId != null && exactId != AMBIGUOUS && (kinds[exactId] & kindMask) != 0) {
+            return labels[exactId];
+        }
+
+        // Count shared trigrams per label
+        long[] queryGrams = trigrams(query);
+        int[] shared = new int[labels.length];
+        for (long gram : queryGrams) {
+            int[] ids = postings.get(gram);
+            if (ids != null) {
+                for (int id : ids) {
+                    shared[id]++;
+                }
+            }
+        }
+
+        int best = -1;
+        float bestScore = 0f;
+        float secondScore = 0f;
+        for (int id = 0; id < labels.length; id++) {
+            if (shared[id] == 0 || (kinds[id] & kindMask) == 0) {
+                continue;
+            }
+            float dice = 2f * shared[id] / (queryGrams.length + gramCounts[id]);
+            if (dice < MIN_DICE || !wordsAgree(query, normalized[id])) {
+                continue;
+            }
+            float score = similarity(query, normalized[id]);
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = id;
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+
+        if (best < 0 || bestScore < threshold || bestScore - secondScore < AMBIGUITY_MARGIN) {
+            return null;
+        }
+        return labels[best];
+    }
+
+    /**
+     * Lower-case, strip diacritics and collapse whitespace and punctuation
+     * into single spaces. A label made only of punctuation ("+", "...") keeps
+     * it, so it still has a key of its own.
+     */
+    public static String normalize(String label) {
+        String text = label;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        String normalized = normalize(text, false);
+        return normalized.isEmpty() ? normalize(text, true) : normalized;
+    }
+
+    private static String normalize(String text, boolean keepPunctuation) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)
+                    || (!keepPunctuation && !Character.isLetterOrDigit(c))) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    // Normalized text with the spaces removed, so "wi fi" and "wifi" share a key
+    private static String compact(String normalized) {
+        return normalized.indexOf(' ') < 0 ? normalized : normalized.replace(" ", "");
+    }
+
+    /**
+     * True if both normalized texts have the same number of words and each
+     * pair of words is equal, or differs by one edit when both are at least
+     * MIN_TYPO_WORD letters long and contain no digits
+     */
+    static boolean wordsAgree(String a, String b) {
+        String[] wordsA = a.split(" ");
+        String[] wordsB = b.split(" ");
+        if (wordsA.length != wordsB.length) {
+            return false;
+        }
+        for (int i = 0; i < wordsA.length; i++) {
+            String wordA = wordsA[i];
+            String wordB = wordsB[i];
+            if (wordA.equals(wordB)) {
+                continue;
+            }
+            if (Math.min(wordA.length(), wordB.length()) < MIN_TYPO_WORD
+                    || hasDigit(wordA) || hasDigit(wordB)
+                    || levenshtein(wordA, wordB) > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasDigit(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isDigit(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 1 - edit distance / longer length
+     */
+    static float similarity(String a, String b) {
+        int longer = Math.max(a.length(), b.length());
+        if (longer == 0) {
+            return 1f;
+        }
+        return 1f - (float) levenshtein(a, b) / longer;
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * Distinct trigrams of " text ", each packed into a long
+     */
+    private static long[] trigrams(String text) {
+        int length = text.length() + 2;
+        long[] grams = new long[Math.max(length - 2, 1)];
+        int count = 0;
+        for (int i = 0; i + 2 < length; i++) {
+            grams[count++] = ((long) charAt(text, i) << 32) | ((long) charAt(text, i + 1) << 16) | charAt(text, i + 2);
+        }
+        if (count == 0) {
+            return new long[0];
+        }
+        Arrays.sort(grams, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == grams.length ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    // Character of " text " at index, padding with spaces
+    private static char charAt(String text, int index) {
+        return index == 0 || index > text.length() ? ' ' : text.charAt(index - 1);
+    }
+
+    private static void addAll(Map<String, Integer> labelKinds, String[] values, int kind) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                add(labelKinds, value, kind);
+            }
+        }
+    }
+
+    private static void add(Map<String, Integer> labelKinds, String label, int kind) {
+        Integer previous = labelKinds.get(label);
+        labelKinds.put(label, previous != null ? previous | kind : kind);
+    }
+}
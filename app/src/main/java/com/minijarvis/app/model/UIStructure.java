@@ -2,6 +2,9 @@ package com.minijarvis.app.model;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Arrays;
+import java.util.Locale;
+
 /**
  * Represents the UI structure extracted from Accessibility API
  */
@@ -18,10 +21,116 @@ public class UIStructure {
     @SerializedName("focused")
     public String focused;
 
+    // Lower-cased clickable labels, built on first use and never serialized
+    private transient String[] lowerClickable;
+    private transient TargetResolver targetResolver;
+
     public UIStructure(String app, String[] clickable, String[] textFields, String focused) {
         this.app = app;
         this.clickable = clickable;
         this.textFields = textFields;
         this.focused = focused;
     }
+
+    /**
+     * Clickable labels lower-cased once per structure, index-aligned with
+     * clickable. Do not modify clickable after calling this.
+     */
+    public String[] getLowerClickable() {
+        String[] lower = lowerClickable;
+        if (lower == null) {
+            String[] labels = clickable != null ? clickable : new String[0];
+            lower = new String[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                lower[i] = labels[i].toLowerCase(Locale.ROOT);
+            }
+            lowerClickable = lower;
+        }
+        return lower;
+    }
+
+    /**
+     * Fuzzy label index of this structure, built on first use.
+     * Do not modify the label arrays after calling this.
+     */
+    public TargetResolver getTargetResolver() {
+        TargetResolver resolver = targetResolver;
+        if (resolver == null) {
+            resolver = new TargetResolver(this);
+            targetResolver = resolver;
+        }
+        return resolver;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UIStructure)) {
+            return false;
+        }
+        UIStructure other = (UIStructure) o;
+        return equal(app, other.app) &&
+                equal(focused, other.focused) &&
+                Arrays.equals(clickable, other.clickable) &&
+                Arrays.equals(textFields, other.textFields);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = app != null ? app.hashCode() : 0;
+        result = 31 * result + (focused != null ? focused.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(clickable);
+        result = 31 * result + Arrays.hashCode(textFields);
+        return result;
+    }
+
+    /**
+     * Stable 64-bit FNV-1a hash of the app and the sorted clickable and text
+     * field labels. Focus is left out so typing into a field does not change
+     * the fingerprint of the screen.
+     */
+    public long fingerprint() {
+        long hash = FNV_OFFSET;
+        hash = hash(hash, app);
+        hash = hash(hash, sorted(clickable));
+        return hash(hash, sorted(textFields));
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(long hash, String[] values) {
+        hash = hash(hash, String.valueOf(values.length));
+        for (String value : values) {
+            hash = hash(hash, value);
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        // Separator so ["ab"] and ["a", "b"] differ
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    private static String[] sorted(String[] values) {
+        if (values == null) {
+            return new String[0];
+        }
+        String[] copy = values.clone();
+        Arrays.sort(copy, (a, b) -> a == null ? (b == null ? 0 : -1) : b == null ? 1 : a.compareTo(b));
+        return copy;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.minijarvis.app.service;
+
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SHA-256 digests of the fixed-size chunks of a downloaded file, kept next
+ * to it as "<file>.chunks". The digests are taken while the download
+ * streams, so writing the manifest costs no extra pass over the file.
+ *
+ * <p>The manifest also carries a verification stamp: the length and
+ * modification time the file had when it was last known to match. A
+ * matching stamp lets startup trust the file without reading it; a stale
+ * one means the file must be rehashed, and only the chunks that differ
+ * need to be fetched again.
+ */
+public class ChunkManifest {
+    private static final String TAG = "ChunkManifest";
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final String EXT = ".chunks";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @SerializedName("chunk_size")
+    int chunkSize;
+
+    @SerializedName("size")
+    long size;
+
+    // ETag or Last-Modified the chunks were fetched under, for If-Range on repair
+    @SerializedName("validator")
+    String validator;
+
+    @SerializedName("digests")
+    String[] digests;
+
+    @SerializedName("verified_length")
+    long verifiedLength = -1;
+
+    @SerializedName("verified_modified")
+    long verifiedModified;
+
+    ChunkManifest() {
+    }
+
+    ChunkManifest(int chunkSize, long size, String validator, String[] digests) {
+        this.chunkSize = chunkSize;
+        this.size = size;
+        this.validator = validator;
+        this.digests = digests;
+    }
+
+    /**
+     * Manifest of target, or null if there is none or it is unreadable
+     */
+    public static ChunkManifest load(File target) {
+        File file = fileFor(target);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            ChunkManifest manifest = GsonProvider.get().fromJson(reader, ChunkManifest.class);
+            if (manifest != null && manifest.chunkSize > 0 && manifest.digests != null
+                    && manifest.digests.length == chunkCount(manifest.size, manifest.chunkSize)) {
+                return manifest;
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.w(TAG, "Unreadable chunk manifest for " + target.getName(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Whether target still has the length and modification time it had when
+     * its chunks last matched the manifest. Reads no file data.
+     */
+    public static boolean isVerified(File target) {
+        ChunkManifest manifest = load(target);
+        return manifest != null && manifest.hasValidStamp(target);
+    }
+
+    /**
+     * Withdraw the stamp, e.g. after the file failed to load, so the next
+     * check rehashes it
+     */
+    public static void invalidate(File target) {
+        ChunkManifest manifest = load(target);
+        if (manifest != null && manifest.verifiedLength >= 0) {
+            manifest.verifiedLength = -1;
+            manifest.verifiedModified = 0;
+            try {
+                manifest.save(target);
+            } catch (IOException e) {
+                // Without a readable stamp the file is rehashed anyway
+                fileFor(target).delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the manifest of target
+     */
+    public static void delete(File target) {
+        fileFor(target).delete();
+    }
+
+    public boolean hasValidStamp(File target) {
+        return verifiedLength == size && target.length() == verifiedLength
+                && target.lastModified() == verifiedModified;
+    }
+
+    /**
+     * Record that target currently matches every chunk digest
+     */
+    void stamp(File target) {
+        verifiedLength = target.length();
+        verifiedModified = target.lastModified();
+    }
+
+    /**
+     * Write the manifest for target, replacing any previous one atomically
+     */
+    void save(File target) throws IOException {
+        File file = fileFor(target);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            GsonProvider.get().toJson(this, writer);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    public int getChunkCount() {
+        return digests.length;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    long chunkStart(int chunk) {
+        return (long) chunk * chunkSize;
+    }
+
+    // Inclusive
+    long chunkEnd(int chunk) {
+        return Math.min(chunkStart(chunk) + chunkSize, size) - 1;
+    }
+
+    /**
+     * Rehash target and list the chunks whose digest differs from the
+     * manifest, including chunks missing from a truncated file
+     */
+    public List<Integer> findCorruptChunks(File target) throws IOException, InterruptedException {
+        List<Integer> corrupt = new ArrayList<>();
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(target)) {
+            for (int chunk = 0; chunk < digests.length; chunk++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = chunkEnd(chunk) - chunkStart(chunk) + 1;
+                int read = 0;
+                while (remaining > 0 && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    digest.update(buffer, 0, read);
+                    remaining -= read;
+                }
+                // digest() also resets it for the next chunk
+                String actual = toHex(digest.digest());
+                if (remaining > 0 || !actual.equals(digests[chunk])) {
+                    corrupt.add(chunk);
+                }
+            }
+        }
+        Log.i(TAG, target.getName() + ": " + corrupt.size() + " of " + digests.length + " chunks differ");
+        return corrupt;
+    }
+
+    /**
+     * SHA-256 of a whole file, as hex
+     */
+    public static String digestOf(File file) throws IOException, InterruptedException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static int chunkCount(long size, int chunkSize) {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android runtime is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    private static File fileFor(File target) {
+        return new File(target.getPath() + EXT);
+    }
+}
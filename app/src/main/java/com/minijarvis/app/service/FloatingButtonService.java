@@ -45,7 +45,8 @@ public class FloatingButtonService extends Service {
         void onEmergencyStop();
     }
     
-    private FloatingButtonListener buttonListener;
+    // Static so it can be registered before the service has been created
+    private static FloatingButtonListener buttonListener;
     
     public static Intent getStartIntent(Context context) {
         return new Intent(context, FloatingButtonService.class);
@@ -251,8 +252,8 @@ public class FloatingButtonService extends Service {
     /**
      * Set listener for button events
      */
-    public void setFloatingButtonListener(FloatingButtonListener listener) {
-        this.buttonListener = listener;
+    public static void setFloatingButtonListener(FloatingButtonListener listener) {
+        buttonListener = listener;
     }
     
     /**
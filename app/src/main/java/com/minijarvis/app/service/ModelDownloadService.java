@@ -5,8 +5,8 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
-import android.net.Uri;
 import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
@@ -14,32 +14,24 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
 import com.minijarvis.app.R;
+import com.minijarvis.app.llm.ModelManager;
 import com.minijarvis.app.ui.MainActivity;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
 /**
- * Service for downloading the AI model from the internet
+ * Foreground service that keeps the process alive while ModelManager
+ * downloads or verifies the model, and mirrors its progress in a
+ * notification
  */
-public class ModelDownloadService extends Service {
+public class ModelDownloadService extends Service implements ModelManager.Listener {
     private static final String TAG = "ModelDownloadService";
     private static final String CHANNEL_ID = "ModelDownload";
     private static final int NOTIFICATION_ID = 1002;
     
-    private static final String MODEL_URL = "https://huggingface.co/leliuga/ggml-gemma-2b-v1-q4_0/resolve/main/gemma-2b-v1-q4_0.gguf";
-    private static final String MODEL_FILE = "gemma-2b-q4_0.gguf";
-    private static final String MODEL_DIR = "models";
-    
     private NotificationManager notificationManager;
-    private Thread downloadThread;
+    private ModelManager modelManager;
     
-    public static Intent getDownloadIntent() {
-        return new Intent("com.minijarvis.app.action.DOWNLOAD_MODEL");
+    public static Intent getDownloadIntent(Context context) {
+        return new Intent(context, ModelDownloadService.class);
     }
 
     @Override
@@ -47,6 +39,8 @@ public class ModelDownloadService extends Service {
         super.onCreate();
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         createNotificationChannel();
+        modelManager = ModelManager.getInstance(this);
+        modelManager.addListener(this);
         Log.i(TAG, "ModelDownloadService created");
     }
 
@@ -57,16 +51,8 @@ public class ModelDownloadService extends Service {
         // Start download in foreground
         startForeground(NOTIFICATION_ID, createNotification("Initializing download...", 0));
         
-        // Start download thread
-        downloadThread = new Thread(() -> {
-            try {
-                downloadModel();
-            } catch (Exception e) {
-                Log.e(TAG, "Error downloading model", e);
-                showNotification("Download failed", "Please try again");
-            }
-        });
-        downloadThread.start();
+        // Joins the running download if there is one; resumes from the journal after a restart
+        modelManager.start();
         
         return START_STICKY;
     }
@@ -79,73 +65,40 @@ public class ModelDownloadService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (downloadThread != null) {
-            downloadThread.interrupt();
-        }
+        modelManager.removeListener(this);
         Log.i(TAG, "ModelDownloadService destroyed");
     }
 
-    private void downloadModel() {
-        try {
-            File modelDir = new File(getFilesDir(), MODEL_DIR);
-            if (!modelDir.exists()) {
-                modelDir.mkdirs();
-            }
-            File modelFile = new File(modelDir, MODEL_FILE);
-            
-            // Check if already exists
-            if (modelFile.exists()) {
-                Log.i(TAG, "Model file already exists");
-                showNotification("Model ready", "You can now use MiniJarvis!");
+    // Runs on the ModelManager thread; NotificationManager is thread-safe
+    @Override
+    public void onModelStatus(ModelManager.Status status) {
+        switch (status.state) {
+            case DOWNLOADING:
+                showProgress(status.getPercent());
+                break;
+                
+            case VERIFYING:
+                notificationManager.notify(NOTIFICATION_ID, createNotification("Verifying model...", 0));
+                break;
+                
+            case READY:
+                Log.i(TAG, "Model ready: " + status.totalBytes + " bytes");
+                showNotification("Download complete", "MiniJarvis is ready!");
                 stopForeground(false);
                 stopSelf();
-                return;
-            }
-            
-            Log.i(TAG, "Starting model download from: " + MODEL_URL);
-            showNotification("Downloading model...", 0);
-            
-            URL url = new URL(MODEL_URL);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.connect();
-
-            int fileLength = connection.getContentLength();
-            InputStream input = new BufferedInputStream(connection.getInputStream());
-            FileOutputStream output = new FileOutputStream(modelFile);
-
-            byte[] buffer = new byte[8192];
-            long total = 0;
-            int count;
-            while ((count = input.read(buffer)) != -1) {
-                total += count;
+                break;
                 
-                // Update progress
-                int progress = (int) (total * 100 / fileLength);
-                showNotification("Downloading model...", progress);
+            case FAILED:
+                showNotification("Download failed", status.error);
+                stopForeground(false);
+                stopSelf();
+                break;
                 
-                output.write(buffer, 0, count);
-            }
-
-            output.flush();
-            output.close();
-            input.close();
-            connection.disconnect();
-            
-            Log.i(TAG, "Model downloaded successfully: " + total + " bytes");
-            showNotification("Download complete", "MiniJarvis is ready!");
-            
-            // Wait a bit then stop
-            Thread.sleep(2000);
-            stopForeground(false);
-            stopSelf();
-            
-        } catch (InterruptedException e) {
-            Log.i(TAG, "Download interrupted");
-        } catch (Exception e) {
-            Log.e(TAG, "Download failed", e);
-            showNotification("Download failed", e.getMessage());
-            stopForeground(false);
-            stopSelf();
+            case NOT_DOWNLOADED:
+                // Paused or cancelled from the download screen
+                stopForeground(true);
+                stopSelf();
+                break;
         }
     }
 
@@ -185,6 +138,10 @@ public class ModelDownloadService extends Service {
         return builder.build();
     }
 
+    private void showProgress(int progress) {
+        notificationManager.notify(NOTIFICATION_ID, createNotification("Downloading model...", progress));
+    }
+
     private void showNotification(String title, String text) {
         Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle(title)
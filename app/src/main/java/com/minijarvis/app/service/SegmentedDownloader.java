@@ -0,0 +1,749 @@
+package com.minijarvis.app.service;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Downloads a large file as several byte ranges in parallel, each written
+ * with positional FileChannel writes into a preallocated ".part" file. A
+ * journal next to it records how far each segment got, so a download that
+ * was interrupted or killed resumes where it stopped. Progress is reported
+ * at a fixed interval, not per read.
+ *
+ * <p>Servers without range support get a single sequential stream that
+ * restarts from zero. The target file only appears once it is complete.
+ *
+ * <p>Every chunk is SHA-256 hashed as it streams past, and the digests are
+ * written to a ChunkManifest next to the target. Segments start on chunk
+ * boundaries so each chunk is hashed by exactly one worker, in order.
+ * repair() later re-fetches only the chunks that no longer match.
+ *
+ * <p>With setHashWholeFile() the file is also SHA-256 hashed as one stream,
+ * so a published checksum can be compared without reading it back.
+ */
+public class SegmentedDownloader {
+    private static final String TAG = "SegmentedDownloader";
+    public static final int DEFAULT_SEGMENTS = 4;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MS = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    // Segments smaller than this are not worth their own connection
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final String PART_EXT = ".part";
+    private static final String JOURNAL_EXT = ".journal";
+
+    /**
+     * Called on the downloading thread at most once per progress interval
+     */
+    public interface ProgressListener {
+        void onProgress(long downloadedBytes, long totalBytes);
+    }
+
+    // Persisted per-segment progress of one download
+    private static class Journal {
+        @SerializedName("url")
+        String url;
+
+        // ETag or Last-Modified of the resource, sent back as If-Range on resume
+        @SerializedName("validator")
+        String validator;
+
+        @SerializedName("total")
+        long totalBytes;
+
+        @SerializedName("starts")
+        long[] starts;
+
+        @SerializedName("ends")
+        long[] ends;
+
+        @SerializedName("done")
+        long[] done;
+
+        @SerializedName("chunk_size")
+        int chunkSize;
+
+        // Digests of the chunks finished so far, null for the others
+        @SerializedName("digests")
+        String[] digests;
+    }
+
+    /**
+     * Raised when If-Range shows the file changed on the server; retrying
+     * the range cannot help
+     */
+    private static class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResourceChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Hashes the chunks one segment streams through. Must be fed from a
+     * chunk boundary on, in order.
+     */
+    private static class ChunkHasher {
+        private final MessageDigest digest = ChunkManifest.newDigest();
+        private final int chunkSize;
+        private final long end;
+        private final AtomicReferenceArray<String> digests;
+
+        ChunkHasher(int chunkSize, long end, AtomicReferenceArray<String> digests) {
+            this.chunkSize = chunkSize;
+            this.end = end;
+            this.digests = digests;
+        }
+
+        // bytes[offset, offset + length) were written at position
+        void update(byte[] bytes, int offset, int length, long position) {
+            while (length > 0) {
+                long chunkEnd = Math.min((position / chunkSize + 1) * chunkSize, end + 1);
+                int count = (int) Math.min(length, chunkEnd - position);
+                digest.update(bytes, offset, count);
+                offset += count;
+                length -= count;
+                position += count;
+                if (position == chunkEnd) {
+                    digests.set((int) ((position - 1) / chunkSize), ChunkManifest.toHex(digest.digest()));
+                }
+            }
+        }
+    }
+
+    private final URL url;
+    private final File target;
+    private final File partFile;
+    private final File journalFile;
+    private final Gson gson = GsonProvider.get();
+    private int segments = DEFAULT_SEGMENTS;
+    private int chunkSize = ChunkManifest.DEFAULT_CHUNK_SIZE;
+    private long progressIntervalMs = DEFAULT_PROGRESS_INTERVAL_MS;
+    private ProgressListener listener;
+    private boolean hashWholeFile;
+    private String fileSha256;
+
+    public SegmentedDownloader(URL url, File target) {
+        this.url = url;
+        this.target = target;
+        this.partFile = new File(target.getPath() + PART_EXT);
+        this.journalFile = new File(target.getPath() + JOURNAL_EXT);
+    }
+
+    public SegmentedDownloader setSegments(int segments) {
+        this.segments = Math.max(1, segments);
+        return this;
+    }
+
+    /**
+     * Size of the hashed chunks, the unit repair() re-fetches
+     */
+    public SegmentedDownloader setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(BUFFER_SIZE, chunkSize);
+        return this;
+    }
+
+    public SegmentedDownloader setProgressInterval(long progressIntervalMs) {
+        this.progressIntervalMs = progressIntervalMs;
+        return this;
+    }
+
+    public SegmentedDownloader setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Also hash the whole file as it streams in, see getFileSha256(). Ranges
+     * arriving in parallel cannot feed one digest in order, so a new
+     * download then runs as a single segment.
+     */
+    public SegmentedDownloader setHashWholeFile(boolean hashWholeFile) {
+        this.hashWholeFile = hashWholeFile;
+        return this;
+    }
+
+    /**
+     * SHA-256 of the file the last download() produced, as hex, or null if
+     * it was not hashed in order, e.g. resumed from a parallel download
+     */
+    public String getFileSha256() {
+        return fileSha256;
+    }
+
+    /**
+     * Whether an interrupted download left progress to resume from
+     */
+    public boolean hasPartialDownload() {
+        return partFile.exists() && journalFile.exists();
+    }
+
+    /**
+     * Discard any partial download and its journal
+     */
+    public void discardPartialDownload() {
+        partFile.delete();
+        journalFile.delete();
+    }
+
+    /**
+     * Download to the target file, resuming a previous attempt if possible.
+     * Interrupting the calling thread stops the download and keeps the
+     * journal for the next call.
+     *
+     * @return size of the downloaded file
+     */
+    public long download() throws IOException, InterruptedException {
+        fileSha256 = null;
+        Journal journal = loadJournal();
+        if (journal == null) {
+            journal = probe();
+        } else {
+            rewindToChunks(journal);
+            Log.i(TAG, "Resuming " + target.getName() + " at " + downloaded(journal) + " of " +
+                    journal.totalBytes + " bytes");
+        }
+
+        if (journal.starts == null) {
+            // No range support or unknown length, nothing can be resumed
+            return downloadSequential(journal.validator);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+            if (file.length() != journal.totalBytes) {
+                // Reserve the whole file up front so segments never extend it concurrently
+                file.setLength(journal.totalBytes);
+            }
+            // One segment streams in file order; a resume hashes what it already wrote first
+            MessageDigest fileDigest = hashWholeFile && journal.starts.length == 1
+                    ? digestOfPrefix(journal.starts[0] + journal.done[0]) : null;
+            downloadSegments(journal, file.getChannel(), true, fileDigest);
+            if (fileDigest != null) {
+                fileSha256 = ChunkManifest.toHex(fileDigest.digest());
+            }
+        }
+
+        complete(new ChunkManifest(journal.chunkSize, journal.totalBytes, journal.validator, journal.digests));
+        Log.i(TAG, "Downloaded " + target.getName() + ": " + journal.totalBytes + " bytes");
+        return journal.totalBytes;
+    }
+
+    /**
+     * Re-fetch the given chunks of the finished target in place, in
+     * parallel, and check each against the manifest. Stamps the manifest as
+     * verified once every chunk matches.
+     *
+     * @throws IOException if the server no longer has the same file or a
+     *                     fresh chunk still differs; download it again then
+     */
+    public void repair(ChunkManifest manifest, List<Integer> chunks) throws IOException, InterruptedException {
+        if (!chunks.isEmpty()) {
+            refetchChunks(manifest, chunks);
+        }
+        manifest.stamp(target);
+        manifest.save(target);
+    }
+
+    private void refetchChunks(ChunkManifest manifest, List<Integer> chunks)
+            throws IOException, InterruptedException {
+        Journal plan = new Journal();
+        plan.url = url.toString();
+        plan.validator = manifest.validator;
+        plan.totalBytes = manifest.size;
+        plan.chunkSize = manifest.chunkSize;
+        plan.digests = new String[manifest.getChunkCount()];
+        plan.starts = new long[chunks.size()];
+        plan.ends = new long[chunks.size()];
+        plan.done = new long[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            plan.starts[i] = manifest.chunkStart(chunks.get(i));
+            plan.ends[i] = manifest.chunkEnd(chunks.get(i));
+        }
+        Log.i(TAG, "Repairing " + chunks.size() + " chunks of " + target.getName());
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            if (file.length() != manifest.size) {
+                file.setLength(manifest.size);
+            }
+            downloadSegments(plan, file.getChannel(), false, null);
+            file.getChannel().force(false);
+        }
+
+        for (int chunk : chunks) {
+            if (!manifest.digests[chunk].equals(plan.digests[chunk])) {
+                throw new IOException("Chunk " + chunk + " of " + target.getName() + " still differs after repair");
+            }
+        }
+    }
+
+    /**
+     * Run every unfinished range of the plan on at most segments threads
+     *
+     * @param journaled  checkpoint the plan to the journal while running
+     * @param fileDigest fed every byte in file order, only for a plan of one segment; may be null
+     */
+    private void downloadSegments(Journal journal, FileChannel channel, boolean journaled,
+                                  MessageDigest fileDigest) throws IOException, InterruptedException {
+        int count = journal.starts.length;
+        AtomicLongArray done = new AtomicLongArray(journal.done);
+        AtomicReferenceArray<String> digests = new AtomicReferenceArray<>(journal.digests);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(count, segments),
+                r -> new Thread(r, "MiniJarvis-Download"));
+        List<Future<?>> futures = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final int segment = i;
+                if (journal.starts[i] + journal.done[i] <= journal.ends[i]) {
+                    futures.add(pool.submit(() -> {
+                        downloadSegment(journal, segment, done, digests, channel, fileDigest);
+                        return null;
+                    }));
+                }
+            }
+
+            // Report and checkpoint at a fixed rate until every segment finished
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(progressIntervalMs, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if (journaled) {
+                            checkpoint(journal, done, digests, channel);
+                        }
+                        reportProgress(journal, done);
+                    }
+                }
+            }
+            reportProgress(journal, done);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            snapshot(journal, done, digests);
+            if (journaled) {
+                checkpoint(journal, done, digests, channel);
+            }
+        }
+    }
+
+    /**
+     * Fetch the rest of one segment, retrying with backoff on I/O errors
+     */
+    private void downloadSegment(Journal journal, int segment, AtomicLongArray done,
+                                 AtomicReferenceArray<String> digests, FileChannel channel,
+                                 MessageDigest fileDigest) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // Segments start on a chunk boundary, and resumes rewind to one
+        ChunkHasher hasher = new ChunkHasher(journal.chunkSize, journal.ends[segment], digests);
+        for (int attempt = 1; ; attempt++) {
+            long position = journal.starts[segment] + done.get(segment);
+            long end = journal.ends[segment];
+            if (position > end) {
+                return;
+            }
+
+            HttpURLConnection connection = open();
+            try {
+                connection.setRequestProperty("Range", "bytes=" + position + "-" + end);
+                if (journal.validator != null) {
+                    connection.setRequestProperty("If-Range", journal.validator);
+                }
+                int code = connection.getResponseCode();
+                boolean changed = code == HttpURLConnection.HTTP_OK && journal.validator != null;
+                if (changed || code == HttpURLConnection.HTTP_PARTIAL && rangeStart(connection) != position) {
+                    // A full response to If-Range means the file changed on the server
+                    discardPartialDownload();
+                    throw new ResourceChangedException("Server did not return range " + position + "-" +
+                            end + " (HTTP " + code + ")");
+                }
+                if (code != HttpURLConnection.HTTP_PARTIAL) {
+                    // 5xx, 429 and the like are transient, the journal stays valid
+                    throw new IOException("HTTP " + code + " for range " + position + "-" + end);
+                }
+
+                try (InputStream input = connection.getInputStream()) {
+                    int read;
+                    while (position <= end && (read = input.read(buffer.array())) != -1) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                        int length = (int) Math.min(read, end - position + 1);
+                        buffer.clear();
+                        buffer.limit(length);
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer, position + buffer.position());
+                        }
+                        // The digest lands before done moves past its chunk, so a checkpoint has both
+                        hasher.update(buffer.array(), 0, length, position);
+                        if (fileDigest != null) {
+                            fileDigest.update(buffer.array(), 0, length);
+                        }
+                        position += length;
+                        done.addAndGet(segment, length);
+                    }
+                }
+                if (position <= end) {
+                    throw new IOException("Connection closed at " + position + " of range ending " + end);
+                }
+                return;
+            } catch (InterruptedIOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                retryOrThrow(segment, attempt, e);
+            } catch (ResourceChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                retryOrThrow(segment, attempt, e);
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private void retryOrThrow(int segment, int attempt, IOException e) throws IOException, InterruptedException {
+        if (attempt >= MAX_ATTEMPTS) {
+            throw e;
+        }
+        Log.w(TAG, "Segment " + segment + " failed, retry " + attempt + ": " + e.getMessage());
+        Thread.sleep(RETRY_BASE_MS << (attempt - 1));
+    }
+
+    /**
+     * Find out the size of the file and whether the server serves ranges
+     */
+    private Journal probe() throws IOException {
+        HttpURLConnection connection = open();
+        try {
+            connection.setRequestProperty("Range", "bytes=0-0");
+            int code = connection.getResponseCode();
+            Journal journal = new Journal();
+            journal.url = url.toString();
+            journal.validator = validator(connection);
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                journal.totalBytes = totalFromContentRange(connection.getHeaderField("Content-Range"));
+            }
+            if (journal.totalBytes <= 0) {
+                Log.i(TAG, "No range support (HTTP " + code + "), downloading in one stream");
+                return journal;
+            }
+
+            // Whole chunks per segment, so no chunk is split between two workers
+            int chunks = ChunkManifest.chunkCount(journal.totalBytes, chunkSize);
+            int wanted = hashWholeFile ? 1 : segments;
+            int count = (int) Math.max(1, Math.min(Math.min(wanted, chunks), journal.totalBytes / MIN_SEGMENT_BYTES));
+            int chunksPerSegment = (chunks + count - 1) / count;
+            count = (chunks + chunksPerSegment - 1) / chunksPerSegment;
+            journal.chunkSize = chunkSize;
+            journal.digests = new String[chunks];
+            journal.starts = new long[count];
+            journal.ends = new long[count];
+            journal.done = new long[count];
+            for (int i = 0; i < count; i++) {
+                journal.starts[i] = (long) i * chunksPerSegment * chunkSize;
+                journal.ends[i] = Math.min((long) (i + 1) * chunksPerSegment * chunkSize, journal.totalBytes) - 1;
+            }
+            // A fresh plan never trusts an old part file
+            partFile.delete();
+            Log.i(TAG, "Downloading " + journal.totalBytes + " bytes in " + count + " segments");
+            return journal;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private long downloadSequential(String validator) throws IOException, InterruptedException {
+        HttpURLConnection connection = open();
+        try {
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code);
+            }
+            long total = connection.getContentLengthLong();
+            // Without a length up front there is nothing to lay chunks out against
+            AtomicReferenceArray<String> digests = total > 0
+                    ? new AtomicReferenceArray<String>(ChunkManifest.chunkCount(total, chunkSize)) : null;
+            ChunkHasher hasher = total > 0 ? new ChunkHasher(chunkSize, total - 1, digests) : null;
+            MessageDigest fileDigest = hashWholeFile ? ChunkManifest.newDigest() : null;
+            long written = 0;
+            long lastReport = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream input = connection.getInputStream();
+                 FileOutputStream output = new FileOutputStream(partFile)) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    output.write(buffer, 0, read);
+                    if (hasher != null) {
+                        hasher.update(buffer, 0, (int) Math.min(read, total - written), written);
+                    }
+                    if (fileDigest != null) {
+                        fileDigest.update(buffer, 0, read);
+                    }
+                    written += read;
+                    long now = System.currentTimeMillis();
+                    if (listener != null && now - lastReport >= progressIntervalMs) {
+                        lastReport = now;
+                        listener.onProgress(written, total);
+                    }
+                }
+            }
+            if (total > 0 && written != total) {
+                throw new IOException("Expected " + total + " bytes, got " + written);
+            }
+            if (listener != null) {
+                listener.onProgress(written, written);
+            }
+            if (fileDigest != null) {
+                fileSha256 = ChunkManifest.toHex(fileDigest.digest());
+            }
+            if (digests != null) {
+                String[] digestArray = new String[digests.length()];
+                for (int i = 0; i < digestArray.length; i++) {
+                    digestArray[i] = digests.get(i);
+                }
+                complete(new ChunkManifest(chunkSize, written, validator, digestArray));
+            } else {
+                ChunkManifest.delete(target);
+                moveToTarget();
+            }
+            return written;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Digest of the first length bytes of the part file, to continue
+     * hashing a resumed download from
+     */
+    private MessageDigest digestOfPrefix(long length) throws IOException, InterruptedException {
+        MessageDigest digest = ChunkManifest.newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new FileInputStream(partFile)) {
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return digest;
+    }
+
+    private HttpURLConnection open() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        // Byte offsets only make sense on the identity encoding
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    private void reportProgress(Journal journal, AtomicLongArray done) {
+        if (listener != null) {
+            long sum = 0;
+            long planned = 0;
+            for (int i = 0; i < done.length(); i++) {
+                sum += done.get(i);
+                planned += journal.ends[i] - journal.starts[i] + 1;
+            }
+            // Equal to the file size, except for a repair
+            listener.onProgress(sum, planned);
+        }
+    }
+
+    /**
+     * Make the written data durable, then record it in the journal, so the
+     * journal never claims bytes a crash could lose
+     */
+    private void checkpoint(Journal journal, AtomicLongArray done, AtomicReferenceArray<String> digests,
+                            FileChannel channel) {
+        if (!partFile.exists()) {
+            return;
+        }
+        snapshot(journal, done, digests);
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot flush download", e);
+            return;
+        }
+
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(journal, writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write download journal", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(journalFile)) {
+            Log.w(TAG, "Cannot replace download journal");
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Copy worker progress into the journal; done is read first, so every
+     * chunk it covers already has its digest
+     */
+    private static void snapshot(Journal journal, AtomicLongArray done, AtomicReferenceArray<String> digests) {
+        long[] doneSnapshot = new long[done.length()];
+        for (int i = 0; i < doneSnapshot.length; i++) {
+            doneSnapshot[i] = done.get(i);
+        }
+        String[] digestSnapshot = new String[digests.length()];
+        for (int i = 0; i < digestSnapshot.length; i++) {
+            digestSnapshot[i] = digests.get(i);
+        }
+        journal.done = doneSnapshot;
+        journal.digests = digestSnapshot;
+    }
+
+    /**
+     * Move unfinished segments back to the start of their current chunk,
+     * whose partial digest did not survive
+     */
+    private static void rewindToChunks(Journal journal) {
+        for (int i = 0; i < journal.starts.length; i++) {
+            if (journal.starts[i] + journal.done[i] <= journal.ends[i]) {
+                journal.done[i] -= journal.done[i] % journal.chunkSize;
+            }
+        }
+    }
+
+    /**
+     * Write the manifest, stamped with the part file it describes, then move
+     * the part file into place. A rename keeps length and modification
+     * time, so the stamp stays valid for the target.
+     */
+    private void complete(ChunkManifest manifest) throws IOException {
+        for (int i = 0; i < manifest.digests.length; i++) {
+            if (manifest.digests[i] == null) {
+                throw new IOException("Chunk " + i + " of " + target.getName() + " was never hashed");
+            }
+        }
+        manifest.stamp(partFile);
+        manifest.save(target);
+        moveToTarget();
+    }
+
+    private void moveToTarget() throws IOException {
+        if (target.exists() && !target.delete() || !partFile.renameTo(target)) {
+            throw new IOException("Cannot move download to " + target);
+        }
+        journalFile.delete();
+    }
+
+    private Journal loadJournal() {
+        if (!hasPartialDownload()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8)) {
+            Journal journal = gson.fromJson(reader, Journal.class);
+            if (journal != null && url.toString().equals(journal.url) && journal.starts != null
+                    && journal.ends != null && journal.done != null
+                    && journal.starts.length == journal.ends.length
+                    && journal.done.length == journal.starts.length
+                    && journal.chunkSize > 0 && journal.digests != null
+                    && journal.digests.length == ChunkManifest.chunkCount(journal.totalBytes, journal.chunkSize)
+                    && partFile.length() == journal.totalBytes) {
+                return journal;
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.w(TAG, "Discarding unreadable download journal", e);
+        }
+        discardPartialDownload();
+        return null;
+    }
+
+    private static long downloaded(Journal journal) {
+        long sum = 0;
+        for (long bytes : journal.done) {
+            sum += bytes;
+        }
+        return sum;
+    }
+
+    private static String validator(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        // Weak validators are not allowed in If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    // "bytes 100-199/1000" -> 100
+    private static long rangeStart(HttpURLConnection connection) {
+        String range = connection.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) {
+            return -1;
+        }
+        int dash = range.indexOf('-');
+        try {
+            return dash > 6 ? Long.parseLong(range.substring(6, dash).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // "bytes 0-0/1000" -> 1000, -1 if the total is unknown
+    private static long totalFromContentRange(String range) {
+        if (range == null) {
+            return -1;
+        }
+        int slash = range.lastIndexOf('/');
+        try {
+            return slash >= 0 ? Long.parseLong(range.substring(slash + 1).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -18,19 +18,33 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.gson.Gson;
 import com.minijarvis.app.R;
 import com.minijarvis.app.accessibility.MiniJarvisAccessibilityService;
+import com.minijarvis.app.agent.AgentExecutor;
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.agent.MacroStore;
+import com.minijarvis.app.llm.ActionCache;
+import com.minijarvis.app.llm.EngineHolder;
+import com.minijarvis.app.llm.InferenceEngine;
 import com.minijarvis.app.llm.LLMEngine;
 import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.llm.ModelBenchmark;
+import com.minijarvis.app.llm.RoutingEngine;
 import com.minijarvis.app.model.ActionModel;
 import com.minijarvis.app.model.UIStructure;
 import com.minijarvis.app.service.FloatingButtonService;
 import com.minijarvis.app.service.ModelDownloadService;
-import com.minijarvis.app.util.ActionExecutor;
+import com.minijarvis.app.util.GsonProvider;
+
+import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Main activity for debugging and controls
  */
 public class MainActivity extends AppCompatActivity implements 
-        MiniJarvisAccessibilityService.UIStructureCallback {
+        MiniJarvisAccessibilityService.UIStructureCallback,
+        FloatingButtonService.FloatingButtonListener,
+        AgentExecutor.Listener,
+        EngineHolder.ReadinessListener {
     
     private static final String TAG = "MainActivity";
     private static final int OVERLAY_PERMISSION_REQUEST_CODE = 1;
@@ -54,13 +68,14 @@ public class MainActivity extends AppCompatActivity implements
     // Core components
     private MiniJarvisAccessibilityService accessibilityService;
     private FloatingButtonService floatingButtonService;
+    private EngineHolder engineHolder;
     private LLMEngine llmEngine;
     private MockLLMEngine mockLlmEngine;
-    private ActionExecutor actionExecutor;
-    private ActionExecutor.ActionTracker actionTracker = new ActionExecutor.ActionTracker();
+    private InferenceEngine inferenceEngine;
+    private AgentExecutor agentExecutor;
     
     // State
-    private Gson gson = new Gson();
+    private final Gson gson = GsonProvider.get();
     private UIStructure currentUIStructure;
     private boolean serviceRunning = false;
     
@@ -70,8 +85,9 @@ public class MainActivity extends AppCompatActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         
-        // Initialize LLM engine to check for model
-        llmEngine = new LLMEngine(this);
+        // Shared engine, loaded in the background since application start
+        engineHolder = EngineHolder.getInstance(this);
+        llmEngine = engineHolder.acquire();
         
         // Check model before showing UI
         if (!llmEngine.isModelDownloaded()) {
@@ -99,16 +115,29 @@ public class MainActivity extends AppCompatActivity implements
         
         // Refresh accessibility service instance
         accessibilityService = MiniJarvisAccessibilityService.getInstance();
+        if (accessibilityService != null) {
+            accessibilityService.setUIStructureCallback(this);
+        }
         
         // Check if model is now available after download
         if (llmEngine != null) {
             updateModelStatus();
             if (llmEngine.isModelDownloaded()) {
                 processButton.setEnabled(true);
+                // No-op while loading or loaded, retries after a fresh download
+                engineHolder.warmUp();
             }
         }
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (accessibilityService != null) {
+            accessibilityService.setUIStructureCallback(null);
+        }
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -116,19 +145,23 @@ public class MainActivity extends AppCompatActivity implements
     }
     
     private void initializeComponents() {
-        // Initialize LLM engines (llmEngine already initialized in onCreate if model exists)
-        if (llmEngine == null) {
-            llmEngine = new LLMEngine(this);
-        }
+        engineHolder.addReadinessListener(this);
         mockLlmEngine = new MockLLMEngine(this);
+        // Rules answer trivial commands, the model only the rest
+        inferenceEngine = new RoutingEngine(mockLlmEngine, llmEngine);
         
-        // Initialize mock engine (for demo purposes)
-        boolean llmInitialized = mockLlmEngine.initialize();
-        Log.i(TAG, "Mock LLM initialized: " + llmInitialized);
+        // Initialize rule engine; the model loads through EngineHolder
+        boolean llmInitialized = inferenceEngine.initialize();
+        Log.i(TAG, "Inference engine initialized: " + llmInitialized);
         
         // Get accessibility service instance
         accessibilityService = MiniJarvisAccessibilityService.getInstance();
-        actionExecutor = new ActionExecutor(accessibilityService);
+        
+        // Pipeline runs off the main thread; emergency stop aborts decoding
+        agentExecutor = new AgentExecutor(inferenceEngine::generateAction, inferenceEngine::cancelGeneration);
+        agentExecutor.setActionCache(new ActionCache(this));
+        agentExecutor.setMacroStore(new MacroStore(this));
+        FloatingButtonService.setFloatingButtonListener(this);
     }
     
     private void setupUI() {
@@ -151,6 +184,11 @@ public class MainActivity extends AppCompatActivity implements
         stopServiceButton.setOnClickListener(v -> stopServices());
         clearLogsButton.setOnClickListener(v -> clearLogs());
         downloadModelButton.setOnClickListener(v -> downloadModel());
+        // Long press measures tokens per second of every installed model variant
+        modelStatusText.setOnLongClickListener(v -> {
+            runModelBenchmark();
+            return true;
+        });
         
         // Check model status
         updateModelStatus();
@@ -266,69 +304,52 @@ public class MainActivity extends AppCompatActivity implements
             return;
         }
         
-        // Use main thread for UI updates
-        mainHandler.post(() -> {
-            try {
-                updateStatus("Processing...");
-                
-                // Get accessibility service instance (may have changed)
-                accessibilityService = MiniJarvisAccessibilityService.getInstance();
-                actionExecutor = new ActionExecutor(accessibilityService);
-                
-                // Get current UI structure
-                if (accessibilityService == null) {
-                    appendLog("Accessibility service not available");
-                    updateStatus("Error");
-                    return;
-                }
-                
-                currentUIStructure = accessibilityService.extractCurrentUI();
-                if (currentUIStructure == null) {
-                    appendLog("Could not extract UI structure");
-                    updateStatus("Error");
-                    return;
-                }
-                
-                // Update UI with current structure
-                updateUIStructureDisplay(currentUIStructure);
-                
-                // Generate action using LLM
-                ActionModel action = mockLlmEngine.generateAction(instruction, currentUIStructure);
-                if (action == null || !action.isValid()) {
-                    appendLog("Failed to generate action");
-                    updateStatus("Error");
-                    return;
-                }
-                
-                // Update model output display
-                String actionJson = gson.toJson(action);
-                modelOutputText.setText(actionJson);
-                
-                appendLog("Generated action: " + action.action);
-                
-                // Check for throttle
-                if (actionTracker.shouldThrottle(action.action, action.target, action.text)) {
-                    appendLog("Action throttled (duplicate)");
-                    updateStatus("Ready");
-                    return;
-                }
-                
-                // Validate and execute action
-                if (actionExecutor.executeAction(action, currentUIStructure)) {
-                    actionTracker.recordAction(action.action, action.target, action.text);
-                    appendLog("Action executed successfully: " + action.action + " " + action.target);
-                    updateStatus("Action executed");
-                } else {
-                    appendLog("Failed to execute action");
-                    updateStatus("Error");
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing instruction", e);
-                appendLog("Error: " + e.getMessage());
-                updateStatus("Error");
-            }
-        });
+        // Extraction, inference and execution run on the agent threads
+        if (!agentExecutor.process(instruction, this)) {
+            Toast.makeText(this, "Still processing previous instruction", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    @Override
+    public void onStatus(String status) {
+        updateStatus(status);
+    }
+    
+    @Override
+    public void onLog(String message) {
+        appendLog(message);
+    }
+    
+    @Override
+    public void onUIStructure(UIStructure uiStructure) {
+        currentUIStructure = uiStructure;
+        updateUIStructureDisplay(uiStructure);
+    }
+    
+    @Override
+    public void onAction(ActionModel action) {
+        // Update model output display
+        modelOutputText.setText(gson.toJson(action));
+    }
+    
+    @Override
+    public void onFinished(AgentLoop.Result result) {
+        if (!result.isSuccess()) {
+            Toast.makeText(this, "Stopped: " + result.stopReason, Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    @Override
+    public void onButtonClicked() {
+        processInstruction();
+    }
+    
+    @Override
+    public void onEmergencyStop() {
+        if (agentExecutor != null) {
+            agentExecutor.cancel();
+            appendLog("Emergency stop");
+        }
     }
     
     private void updateUIStructureDisplay(UIStructure uiStructure) {
@@ -387,22 +408,55 @@ public class MainActivity extends AppCompatActivity implements
         Toast.makeText(this, "Model download will start. This may take several minutes.", Toast.LENGTH_LONG).show();
     }
     
+    private void runModelBenchmark() {
+        appendLog("Benchmarking installed models...");
+        Future<List<ModelBenchmark.Result>> pending = engineHolder.runModelBenchmark();
+        new Thread(() -> {
+            try {
+                List<ModelBenchmark.Result> results = pending.get();
+                mainHandler.post(() -> {
+                    if (results.isEmpty()) {
+                        appendLog("No installed model could be loaded");
+                    }
+                    for (ModelBenchmark.Result result : results) {
+                        appendLog(result.toString());
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Model benchmark failed", e);
+                mainHandler.post(() -> appendLog("Benchmark failed: " + e.getMessage()));
+            }
+        }, "MiniJarvis-Benchmark").start();
+    }
+    
+    @Override
+    public void onEngineReady(LLMEngine engine, boolean ready) {
+        if (ready) {
+            EngineHolder.LoadTimings timings = engineHolder.getLoadTimings();
+            appendLog("Model loaded" + (timings != null ? ": " + timings : ""));
+        }
+    }
+    
     @Override
     public void onUIStructureChanged(UIStructure uiStructure) {
-        // Called when UI structure changes (throttled by accessibility service)
-        mainHandler.post(() -> {
-            currentUIStructure = uiStructure;
-            updateUIStructureDisplay(uiStructure);
-            appendLog("UI updated: " + uiStructure.app);
-        });
+        // Called on the main thread once per coalesced burst of UI changes
+        currentUIStructure = uiStructure;
+        updateUIStructureDisplay(uiStructure);
+        appendLog("UI updated: " + uiStructure.app);
     }
     
     private void cleanupComponents() {
-        if (llmEngine != null) {
-            llmEngine.cleanup();
+        FloatingButtonService.setFloatingButtonListener(null);
+        if (agentExecutor != null) {
+            agentExecutor.shutdown();
+        }
+        // The engine is application-scoped and outlives this activity
+        if (engineHolder != null) {
+            engineHolder.removeReadinessListener(this);
+            engineHolder.release();
         }
-        if (mockLlmEngine != null) {
-            mockLlmEngine.cleanup();
+        if (inferenceEngine != null) {
+            inferenceEngine.cleanup();
         }
     }
 }
\ No newline at end of file
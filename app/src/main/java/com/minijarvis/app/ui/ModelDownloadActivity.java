@@ -1,11 +1,7 @@
 package com.minijarvis.app.ui;
 
 import android.app.Activity;
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.Network;
@@ -30,27 +26,26 @@ import androidx.appcompat.widget.SwitchCompat;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.minijarvis.app.R;
+import com.minijarvis.app.llm.ModelManager;
+import com.minijarvis.app.llm.ModelVariant;
+import com.minijarvis.app.service.ModelDownloadService;
 
-import java.io.File;
-import java.text.DecimalFormat;
+import java.util.List;
 
 /**
  * Activity for downloading the AI model with progress tracking
- * Uses Android DownloadManager for reliable, resumable downloads
+ * The download runs in ModelManager, kept alive by ModelDownloadService;
+ * this screen follows the progress ModelManager pushes
  */
-public class ModelDownloadActivity extends AppCompatActivity {
+public class ModelDownloadActivity extends AppCompatActivity implements ModelManager.Listener {
     private static final String TAG = "ModelDownloadActivity";
     
-    // Model configuration
-    private static final String MODEL_FILE = "gemma-2b-q4_0.gguf";
-    private static final String MODEL_URL = "https://huggingface.co/leliuga/ggml-gemma-2b-v1-q4_0/resolve/main/gemma-2b-v1-q4_0.gguf";
-    private static final long MIN_FREE_STORAGE = 3L * 1024 * 1024 * 1024; // 3GB
-    private static final long MIN_AVAILABLE_RAM = 3L * 1024 * 1024 * 1024; // 3GB
+    // Free space beyond the model file itself, for its journal, manifest and KV cache snapshot
+    private static final long STORAGE_HEADROOM = 512L * 1024 * 1024;
     
     // Download preferences
     private static final String PREFS_NAME = "download_prefs";
     private static final String PREF_WIFI_ONLY = "wifi_only";
-    private static final String PREF_DOWNLOAD_ID = "download_id";
     
     // UI Components
     private ProgressBar progressBar;
@@ -65,19 +60,17 @@ public class ModelDownloadActivity extends AppCompatActivity {
     private LinearLayout errorContainer;
     
     // Download tracking
-    private DownloadManager downloadManager;
-    private long downloadId = -1;
-    private BroadcastReceiver downloadReceiver;
+    private ModelManager modelManager;
     private Handler mainHandler;
     private SharedPreferences preferences;
     private boolean isDownloading = false;
     private boolean isPaused = false;
-    private boolean isReceiverRegistered = false;
     
     // Progress tracking
     private long totalBytes = 0;
     private long downloadedBytes = 0;
     private long startTime = 0;
+    private long startBytes = -1; // Bytes already there when this session started, for the ETA
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -95,29 +88,24 @@ public class ModelDownloadActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        if (isDownloading) {
-            startProgressTracking();
+        // Catch up with whatever happened while not visible, then follow pushed updates
+        modelManager.addListener(this);
+        ModelManager.Status status = modelManager.getStatus();
+        if (status.isRunning() || isDownloading) {
+            updateProgress(status);
         }
     }
     
     @Override
     protected void onPause() {
         super.onPause();
-        // Don't stop tracking in onPause as activity might be resumed
-    }
-    
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (isReceiverRegistered && downloadReceiver != null) {
-            unregisterReceiver(downloadReceiver);
-            isReceiverRegistered = false;
-        }
+        // The download keeps running in ModelDownloadService
+        modelManager.removeListener(this);
     }
     
     private void initializeComponents() {
         mainHandler = new Handler(Looper.getMainLooper());
-        downloadManager = (DownloadManager) getSystemService(Context.DOWNLOAD_SERVICE);
+        modelManager = ModelManager.getInstance(this);
         preferences = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     }
     
@@ -195,7 +183,7 @@ public class ModelDownloadActivity extends AppCompatActivity {
         try {
             StatFs stat = new StatFs(Environment.getDataDirectory().getAbsolutePath());
             long availableBytes = stat.getAvailableBytes();
-            return availableBytes >= MIN_FREE_STORAGE;
+            return availableBytes >= modelManager.getActiveVariant().getSizeBytes() + STORAGE_HEADROOM;
         } catch (Exception e) {
             Log.e(TAG, "Error checking storage", e);
             return true; // Assume available if can't check
@@ -209,8 +197,10 @@ public class ModelDownloadActivity extends AppCompatActivity {
             am.getMemoryInfo(memInfo);
             
             long availableBytes = memInfo.availMem;
-            Log.i(TAG, "Available RAM: " + (availableBytes / (1024 * 1024 * 1024)) + "GB");
-            return availableBytes >= MIN_AVAILABLE_RAM;
+            Log.i(TAG, "Available RAM: " + (availableBytes / (1024 * 1024)) + "MB");
+            // The active variant was picked to fit; the smallest one is the floor
+            List<ModelVariant> variants = modelManager.getRegistry().getVariants();
+            return availableBytes >= variants.get(variants.size() - 1).getRequiredRamBytes();
         } catch (Exception e) {
             Log.e(TAG, "Error checking RAM", e);
             return true; // Assume available if can't check
@@ -237,8 +227,7 @@ public class ModelDownloadActivity extends AppCompatActivity {
     }
     
     private boolean isModelDownloaded() {
-        File modelFile = new File(getFilesDir(), MODEL_FILE);
-        return modelFile.exists() && modelFile.length() > 1000000; // At least 1MB
+        return modelManager.isModelReady();
     }
     
     private void startDownload() {
@@ -249,74 +238,37 @@ public class ModelDownloadActivity extends AppCompatActivity {
         
         hideError();
         
-        // Clean up any existing download
-        if (downloadId != -1) {
-            downloadManager.remove(downloadId);
+        // Redownload: the old file goes first, ModelManager refuses while it is being written
+        if (isModelDownloaded() && !modelManager.deleteModel()) {
+            showError(getString(R.string.download_failed));
+            return;
         }
         
         Log.i(TAG, "Starting model download");
         statusText.setText(getString(R.string.download_initializing));
         downloadButton.setText("Pause");
         
-        // Create download request
-        DownloadManager.Request request = new DownloadManager.Request(android.net.Uri.parse(MODEL_URL));
-        request.setTitle("MiniJarvis AI Model");
-        request.setDescription("Downloading AI engine model");
-        request.setMimeType("application/octet-stream");
-        
-        // Use app-private storage
-        File filesDir = getFilesDir();
-        File modelDir = new File(filesDir, "models");
-        if (!modelDir.exists()) {
-            modelDir.mkdirs();
-        }
-        File modelFile = new File(modelDir, MODEL_FILE);
-        
-        request.setDestinationUri(android.net.Uri.fromFile(modelFile));
-        
-        // Set notification
-        request.setNotificationVisibility(
-            DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED
-        );
-        
-        // Allow network type based on preference
-        if (wifiOnlySwitch.isChecked()) {
-            request.setAllowedNetworkTypes(DownloadManager.Request.NETWORK_WIFI);
-        } else {
-            request.setAllowedNetworkTypes(
-                DownloadManager.Request.NETWORK_WIFI | DownloadManager.Request.NETWORK_MOBILE
-            );
-        }
-        
-        // Start download
-        downloadId = downloadManager.enqueue(request);
-        preferences.edit().putLong(PREF_DOWNLOAD_ID, downloadId).apply();
+        // ModelManager does the work; the service keeps the process alive meanwhile
+        startForegroundService(ModelDownloadService.getDownloadIntent(this));
         
         isDownloading = true;
         isPaused = false;
         startTime = System.currentTimeMillis();
-        
-        startProgressTracking();
-        registerDownloadReceiver();
+        startBytes = -1;
     }
     
     private void pauseDownload() {
-        if (downloadId != -1) {
-            downloadManager.remove(downloadId);
-            isDownloading = false;
-            isPaused = true;
-            downloadButton.setText("Resume");
-            statusText.setText(getString(R.string.download_paused));
-            Log.i(TAG, "Download paused");
-        }
+        // The journal is kept, the next start resumes from it
+        modelManager.pause();
+        isDownloading = false;
+        isPaused = true;
+        downloadButton.setText("Resume");
+        statusText.setText(getString(R.string.download_paused));
+        Log.i(TAG, "Download paused");
     }
     
     private void cancelDownload() {
-        if (downloadId != -1) {
-            downloadManager.remove(downloadId);
-            downloadId = -1;
-            preferences.edit().remove(PREF_DOWNLOAD_ID).apply();
-        }
+        modelManager.cancel();
         isDownloading = false;
         isPaused = false;
         resetProgress();
@@ -328,82 +280,82 @@ public class ModelDownloadActivity extends AppCompatActivity {
         }
     }
     
-    private void startProgressTracking() {
-        new Thread(() -> {
-            while (isDownloading && downloadId != -1) {
-                try {
-                    DownloadManager.Query query = new DownloadManager.Query();
-                    query.setFilterById(downloadId);
-                    
-                    android.database.Cursor cursor = downloadManager.query(query);
-                    if (cursor != null && cursor.moveToFirst()) {
-                        int status = cursor.getInt(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_STATUS));
-                        long totalBytes = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-                        long downloaded = cursor.getLong(cursor.getColumnIndexOrThrow(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-                        
-                        updateProgress(totalBytes, downloaded, status);
-                    }
-                    
-                    if (cursor != null) {
-                        cursor.close();
-                    }
-                    
-                    Thread.sleep(1000); // Update every second
-                } catch (Exception e) {
-                    Log.e(TAG, "Error tracking download", e);
-                    break;
-                }
-            }
-        }).start();
+    // Runs on the ModelManager thread
+    @Override
+    public void onModelStatus(ModelManager.Status status) {
+        mainHandler.post(() -> updateProgress(status));
     }
     
-    private void updateProgress(long total, long downloaded, int status) {
-        mainHandler.post(() -> {
-            switch (status) {
-                case DownloadManager.STATUS_RUNNING:
-                    this.totalBytes = total;
-                    this.downloadedBytes = downloaded;
-                    
-                    int progress = total > 0 ? (int) (downloaded * 100 / total) : 0;
-                    progressBar.setProgress(progress);
-                    progressPercentText.setText(progress + "%");
-                    
-                    // Format sizes
-                    String downloadedStr = formatBytes(downloaded);
-                    String totalStr = formatBytes(total);
-                    progressSizeText.setText(getString(R.string.download_size, downloadedStr, totalStr));
-                    
-                    // Calculate ETA
-                    long elapsed = System.currentTimeMillis() - startTime;
-                    if (downloaded > 0 && elapsed > 5000) {
-                        long remainingBytes = total - downloaded;
-                        long bytesPerSecond = downloaded * 1000 / elapsed;
-                        if (bytesPerSecond > 0) {
-                            long remainingSeconds = remainingBytes / bytesPerSecond;
-                            String eta = formatDuration(remainingSeconds);
-                            etaText.setText(getString(R.string.download_eta, eta));
-                        }
-                    }
-                    
-                    statusText.setText(getString(R.string.download_progress, progress));
+    private void updateProgress(ModelManager.Status status) {
+        switch (status.state) {
+            case DOWNLOADING:
+                isDownloading = true;
+                isPaused = false;
+                downloadButton.setText("Pause");
+                if (status.totalBytes <= 0) {
                     break;
-                    
-                case DownloadManager.STATUS_SUCCESSFUL:
+                }
+                long total = status.totalBytes;
+                long downloaded = status.downloadedBytes;
+                this.totalBytes = total;
+                this.downloadedBytes = downloaded;
+                if (startBytes < 0) {
+                    startBytes = downloaded;
+                    startTime = System.currentTimeMillis();
+                }
+                
+                int progress = status.getPercent();
+                progressBar.setProgress(progress);
+                progressPercentText.setText(progress + "%");
+                
+                // Format sizes
+                String downloadedStr = formatBytes(downloaded);
+                String totalStr = formatBytes(total);
+                progressSizeText.setText(getString(R.string.download_size, downloadedStr, totalStr));
+                
+                // Calculate ETA from this session's rate; resumed bytes came for free
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (downloaded > startBytes && elapsed > 5000) {
+                    long remainingBytes = total - downloaded;
+                    long bytesPerSecond = (downloaded - startBytes) * 1000 / elapsed;
+                    if (bytesPerSecond > 0) {
+                        long remainingSeconds = remainingBytes / bytesPerSecond;
+                        String eta = formatDuration(remainingSeconds);
+                        etaText.setText(getString(R.string.download_eta, eta));
+                    }
+                }
+                
+                statusText.setText(getString(R.string.download_progress, progress));
+                break;
+                
+            case VERIFYING:
+                isDownloading = true;
+                downloadButton.setText("Pause");
+                statusText.setText(getString(R.string.download_verifying));
+                break;
+                
+            case READY:
+                if (isDownloading) {
                     handleDownloadSuccess();
-                    break;
-                    
-                case DownloadManager.STATUS_FAILED:
-                    handleDownloadFailure();
-                    break;
-                    
-                case DownloadManager.STATUS_PAUSED:
-                    isPaused = true;
+                }
+                break;
+                
+            case FAILED:
+                if (isDownloading) {
+                    handleDownloadFailure(status.error);
+                }
+                break;
+                
+            case NOT_DOWNLOADED:
+                // Stopped elsewhere, e.g. the service was restarted without network
+                if (isDownloading) {
                     isDownloading = false;
-                    downloadButton.setText("Resume");
+                    isPaused = modelManager.hasPartialDownload();
+                    downloadButton.setText(isPaused ? "Resume" : getString(R.string.download_retry));
                     statusText.setText(getString(R.string.download_paused));
-                    break;
-            }
-        });
+                }
+                break;
+        }
     }
     
     private void handleDownloadSuccess() {
@@ -430,31 +382,16 @@ public class ModelDownloadActivity extends AppCompatActivity {
         }
     }
     
-    private void handleDownloadFailure() {
-        Log.e(TAG, "Download failed");
+    private void handleDownloadFailure(String error) {
+        Log.e(TAG, "Download failed: " + error);
         isDownloading = false;
         isPaused = false;
         
-        showError(getString(R.string.download_failed));
+        showError(error != null ? getString(R.string.download_failed) + ": " + error
+                : getString(R.string.download_failed));
         downloadButton.setText("Retry");
     }
     
-    private void registerDownloadReceiver() {
-        downloadReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                long receivedId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, -1);
-                if (receivedId == downloadId) {
-                    int status = intent.getIntExtra(DownloadManager.EXTRA_NOTIFICATION_CLICK_DOWNLOAD_ID, -1);
-                    Log.i(TAG, "Download receiver triggered with status: " + status);
-                }
-            }
-        };
-        
-        registerReceiver(downloadReceiver, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
-        isReceiverRegistered = true;
-    }
-    
     private String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
@@ -1,20 +1,30 @@
 package com.minijarvis.app.util;
 
 import android.util.Log;
-import com.minijarvis.app.accessibility.MiniJarvisAccessibilityService;
+import com.minijarvis.app.accessibility.UIController;
 import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.TargetResolver;
 import com.minijarvis.app.model.UIStructure;
 
 /**
- * Executes validated actions using Accessibility Service
+ * Executes validated actions through a UIController, the accessibility
+ * service on device
  */
 public class ActionExecutor {
     private static final String TAG = "ActionExecutor";
+    private static final long MAX_SETTLE_MS = 3000;
     
-    private final MiniJarvisAccessibilityService accessibilityService;
+    private final UIController uiController;
     
-    public ActionExecutor(MiniJarvisAccessibilityService accessibilityService) {
-        this.accessibilityService = accessibilityService;
+    public ActionExecutor(UIController uiController) {
+        this.uiController = uiController;
+    }
+    
+    /**
+     * Whether this executor drives the given controller instance
+     */
+    public boolean isBoundTo(UIController controller) {
+        return uiController == controller;
     }
     
     /**
@@ -68,17 +78,24 @@ public class ActionExecutor {
             return false;
         }
         
-        // Validate target exists
-        if (!isValidTarget(target, currentUI.clickable, currentUI.textFields)) {
-            Log.w(TAG, "Invalid click target: " + target);
-            return false;
+        // Validate target exists, mapping a near miss to the exact label
+        if (!TargetValidator.isValidTarget(target, currentUI.clickable, currentUI.textFields)) {
+            target = resolveNearMiss(action, currentUI,
+                    TargetResolver.CLICKABLE | TargetResolver.FIELD);
+            if (target == null) {
+                Log.w(TAG, "Invalid click target: " + action.target);
+                return false;
+            }
         }
         
-        // Execute click
-        accessibilityService.performClick(target);
+        // Execute click; the node may have gone since the screen was read
+        if (!uiController.performClick(target)) {
+            Log.w(TAG, "Click target not found on screen: " + target);
+            return false;
+        }
         
-        // Add delay as specified in requirements
-        sleep(500);
+        // Wait for the resulting UI changes to settle
+        awaitSettle();
         
         Log.i(TAG, "Click executed successfully on: " + target);
         return true;
@@ -100,17 +117,23 @@ public class ActionExecutor {
             return false;
         }
         
-        // Validate target is a text field
-        if (!isTextFieldValid(target, currentUI.textFields, currentUI.focused)) {
-            Log.w(TAG, "Invalid text field target: " + target);
-            return false;
+        // Validate target is a text field, mapping a near miss to the exact label
+        if (!TargetValidator.isTextFieldValid(target, currentUI.textFields, currentUI.focused)) {
+            target = resolveNearMiss(action, currentUI, TargetResolver.FIELD);
+            if (target == null) {
+                Log.w(TAG, "Invalid text field target: " + action.target);
+                return false;
+            }
         }
         
         // Execute typing
-        accessibilityService.performType(target, text);
+        if (!uiController.performType(target, text)) {
+            Log.w(TAG, "Text field not found on screen: " + target);
+            return false;
+        }
         
-        // Add delay as specified
-        sleep(500);
+        // Wait for the resulting UI changes to settle
+        awaitSettle();
         
         Log.i(TAG, "Type executed successfully in: " + target);
         return true;
@@ -136,10 +159,13 @@ public class ActionExecutor {
         }
         
         // Execute scroll
-        accessibilityService.performScroll(direction);
+        if (!uiController.performScroll(direction)) {
+            Log.w(TAG, "Nothing to scroll " + direction);
+            return false;
+        }
         
-        // Add delay
-        sleep(500);
+        // Wait for the resulting UI changes to settle
+        awaitSettle();
         
         Log.i(TAG, "Scroll executed successfully: " + direction);
         return true;
@@ -161,68 +187,49 @@ public class ActionExecutor {
         
         // TODO: Implement proper app opening logic
         // This would need to search for the app in launcher/recents
-        sleep(500);
+        awaitSettle();
         
         return true; // Return true for now as this is complex to implement without additional permissions
     }
     
     private boolean executeBack() {
-        accessibilityService.performBack();
-        
-        // Add delay
-        sleep(500);
-        
-        Log.i(TAG, "Back action executed successfully");
-        return true;
-    }
-    
-    private boolean isValidTarget(String target, String[] clickable, String[] textFields) {
-        if (target == null || target.isEmpty()) {
+        if (!uiController.performBack()) {
+            Log.w(TAG, "Back action not performed");
             return false;
         }
         
-        // Check clickable elements
-        if (clickable != null) {
-            for (String element : clickable) {
-                if (element != null && element.equals(target)) {
-                    return true;
-                }
-            }
-        }
+        // Wait for the resulting UI changes to settle
+        awaitSettle();
         
-        // Also allow clicking on text fields
-        return isTextFieldValid(target, textFields, null);
+        Log.i(TAG, "Back action executed successfully");
+        return true;
     }
     
-    private boolean isTextFieldValid(String target, String[] textFields, String focused) {
-        if (target == null || target.isEmpty()) {
-            return false;
-        }
-        
-        // Check if it's the focused field
-        if (focused != null && focused.equals(target)) {
-            return true;
-        }
-        
-        // Check text fields array
-        if (textFields != null) {
-            for (String field : textFields) {
-                if (field != null && field.equals(target)) {
-                    return true;
-                }
-            }
+    /**
+     * Resolve a target that differs from every label only by case, spacing,
+     * diacritics or a small typo. Rewrites action.target so caches and
+     * history record the exact label.
+     *
+     * @return the exact label, or null if there is no unique close match
+     */
+    private String resolveNearMiss(ActionModel action, UIStructure currentUI, int kindMask) {
+        String resolved = currentUI.getTargetResolver().resolve(action.target, kindMask);
+        if (resolved != null) {
+            Log.i(TAG, "Resolved target '" + action.target + "' to '" + resolved + "'");
+            action.target = resolved;
         }
-        
-        return false;
+        return resolved;
     }
     
-    private void sleep(long milliseconds) {
-        try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            Log.e(TAG, "Sleep interrupted", e);
+    /**
+     * Block until the accessibility event stream goes quiet instead of a fixed delay
+     */
+    private boolean awaitSettle() {
+        boolean settled = uiController.awaitUISettle(MAX_SETTLE_MS);
+        if (!settled) {
+            Log.w(TAG, "UI did not settle within " + MAX_SETTLE_MS + " ms");
         }
+        return settled;
     }
     
     /**
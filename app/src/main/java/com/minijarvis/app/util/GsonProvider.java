@@ -0,0 +1,18 @@
+package com.minijarvis.app.util;
+
+import com.google.gson.Gson;
+
+/**
+ * Process-wide Gson instance. Gson is thread-safe and caches type adapters,
+ * so one instance serves every component.
+ */
+public class GsonProvider {
+    private static final Gson GSON = new Gson();
+
+    private GsonProvider() {
+    }
+
+    public static Gson get() {
+        return GSON;
+    }
+}
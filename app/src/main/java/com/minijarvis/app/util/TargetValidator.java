@@ -0,0 +1,57 @@
+package com.minijarvis.app.util;
+
+/**
+ * Exact checks of action targets against the labels of a UIStructure.
+ * Plain Java so the checks can be benchmarked off-device.
+ */
+public final class TargetValidator {
+
+    private TargetValidator() {
+    }
+
+    /**
+     * Whether target names a clickable element or a text field exactly
+     */
+    public static boolean isValidTarget(String target, String[] clickable, String[] textFields) {
+        if (target == null || target.isEmpty()) {
+            return false;
+        }
+    
+        // Check clickable elements
+        if (clickable != null) {
+            for (String element : clickable) {
+                if (element != null && element.equals(target)) {
+                    return true;
+                }
+            }
+        }
+    
+        // Also allow clicking on text fields
+        return isTextFieldValid(target, textFields, null);
+    }
+
+    /**
+     * Whether target names a text field or the focused element exactly
+     */
+    public static boolean isTextFieldValid(String target, String[] textFields, String focused) {
+        if (target == null || target.isEmpty()) {
+            return false;
+        }
+    
+        // Check if it's the focused field
+        if (focused != null && focused.equals(target)) {
+            return true;
+        }
+    
+        // Check text fields array
+        if (textFields != null) {
+            for (String field : textFields) {
+                if (field != null && field.equals(target)) {
+                    return true;
+                }
+            }
+        }
+    
+        return false;
+    }
+}
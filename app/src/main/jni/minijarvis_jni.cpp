@@ -1,34 +1,405 @@
 /*
  * MiniJarvis Native Library
- * 
- * This is a placeholder for the native JNI integration with llama.cpp
- * In a production build, you would:
- * 1. Download and build llama.cpp with Android NDK
- * 2. Include the compiled .so files in src/main/jniLibs
- * 3. Implement the JNI methods here
- * 
- * For now, the app uses MockLLMEngine which provides rule-based responses
- * for testing without the actual model.
+ *
+ * JNI bridge between LLMEngine and llama.cpp. Text crosses the boundary as
+ * UTF-8 in direct ByteBuffers owned by the Java side: prompts are tokenized
+ * straight from the buffer address and every generated piece is written
+ * into an output buffer, so no jstring is created per call or per token.
+ * The llama_batch, the token scratch and the sampling candidates are
+ * allocated once per loaded model and reused by every call.
+ *
+ * Builds for Android (arm64-v8a) and for the host JVM, see CMakeLists.txt.
  */
 
 #include <jni.h>
+
+#include <algorithm>
+#include <cerrno>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
 #include <string>
-#include <android/log.h>
+#include <utility>
+#include <vector>
+
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+#include "llama.h"
+#include "gguf.h"
+
+#if defined(MINIJARVIS_REQUIRE_DOTPROD) && defined(__aarch64__)
+#include <asm/hwcap.h>
+#include <sys/auxv.h>
+#endif
 
+#ifdef __ANDROID__
+#include <android/log.h>
 #define LOG_TAG "MiniJarvisJNI"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGW(...) __android_log_print(ANDROID_LOG_WARN, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#else
+#define LOG_HOST(level, ...) (fprintf(stderr, level " MiniJarvisJNI: " __VA_ARGS__), fputc('\n', stderr))
+#define LOGI(...) LOG_HOST("I", __VA_ARGS__)
+#define LOGW(...) LOG_HOST("W", __VA_ARGS__)
+#define LOGE(...) LOG_HOST("E", __VA_ARGS__)
+#endif
+
+namespace {
+
+// Tokens per llama_decode call while prefilling
+constexpr int MAX_BATCH = 512;
+// Decode threads; more than the big cores of a phone only adds contention
+constexpr int MAX_THREADS = 4;
+constexpr int TOP_K = 40;
+// Transformer blocks locked by lockHotLayers, counted from the input side
+constexpr int HOT_BLOCKS = 4;
+
+/*
+ * Everything one loaded model needs between calls. The Java handle is a
+ * pointer to this.
+ */
+struct Session {
+    llama_model *model = nullptr;
+    llama_context *ctx = nullptr;
+    const llama_vocab *vocab = nullptr;
+    // top-k, temperature, dist; or greedy when temperature is 0
+    llama_sampler *sampler = nullptr;
+    // Set by nativeSetGrammar, null for free decoding
+    llama_sampler *grammar = nullptr;
+
+    llama_batch batch{};
+    int batchSize = 0;
+    int contextSize = 0;
+    int maxTokens = 0;
+
+    std::vector<llama_token> tokens;
+    std::vector<llama_token_data> candidates;
+    // Tokens of the evaluated or restored system prompt, kept at the start of the KV cache
+    std::vector<llama_token> prefix;
+
+    int nPast = 0;
+    int generated = 0;
+    // Last sampled token, decoded at the start of the next nativeNextToken so
+    // the final token of a reply is never decoded for nothing
+    llama_token pending = -1;
+
+    // Page-aligned mappings of the hot tensors, mlocked
+    std::vector<std::pair<void *, size_t>> lockedRanges;
+};
+
+/*
+ * Modified UTF-8 of a jstring for the scope of a call; releasing it in the
+ * destructor keeps every early return leak-free
+ */
+class JniString {
+public:
+    JniString(JNIEnv *env, jstring string)
+            : env_(env), string_(string),
+              chars_(string != nullptr ? env->GetStringUTFChars(string, nullptr) : nullptr) {
+    }
+
+    ~JniString() {
+        if (chars_ != nullptr) {
+            env_->ReleaseStringUTFChars(string_, chars_);
+        }
+    }
+
+    JniString(const JniString &) = delete;
+    JniString &operator=(const JniString &) = delete;
+
+    const char *get() const {
+        return chars_;
+    }
+
+private:
+    JNIEnv *env_;
+    jstring string_;
+    const char *chars_;
+};
+
+Session *toSession(jlong modelPtr) {
+    return reinterpret_cast<Session *>(modelPtr);
+}
+
+void logCallback(ggml_log_level level, const char *text, void * /* userData */) {
+    // Debug and info output of a model load runs to hundreds of lines
+    if (level == GGML_LOG_LEVEL_ERROR) {
+        LOGE("%s", text);
+    } else if (level == GGML_LOG_LEVEL_WARN) {
+        LOGW("%s", text);
+    }
+}
+
+int threadCount() {
+    long cores = sysconf(_SC_NPROCESSORS_ONLN);
+    return static_cast<int>(std::max(1L, std::min<long>(MAX_THREADS, cores)));
+}
+
+/*
+ * Decode tokens at the current position in batchSize slices of the reused
+ * batch. Logits are only requested for the last token when needed.
+ */
+bool decodeTokens(Session *session, const llama_token *tokens, int count, bool logitsForLast) {
+    for (int start = 0; start < count; start += session->batchSize) {
+        int n = std::min(session->batchSize, count - start);
+        llama_batch &batch = session->batch;
+        batch.n_tokens = n;
+        for (int i = 0; i < n; i++) {
+            batch.token[i] = tokens[start + i];
+            batch.pos[i] = session->nPast + i;
+            batch.n_seq_id[i] = 1;
+            batch.seq_id[i][0] = 0;
+            batch.logits[i] = logitsForLast && start + i == count - 1;
+        }
+        int32_t result = llama_decode(session->ctx, batch);
+        if (result != 0) {
+            LOGE("llama_decode failed: %d", result);
+            return false;
+        }
+        session->nPast += n;
+    }
+    return true;
+}
+
+/*
+ * Tokenize length bytes of UTF-8 at text into session->tokens
+ *
+ * Returns: Token count, or -1 if the text does not fit the context
+ */
+int tokenize(Session *session, const char *text, int length, bool addSpecial) {
+    std::vector<llama_token> &tokens = session->tokens;
+    int count = llama_tokenize(session->vocab, text, length, tokens.data(),
+                               static_cast<int32_t>(tokens.size()), addSpecial, true);
+    if (count < 0) {
+        LOGE("Text of %d bytes is more than %zu tokens", length, tokens.size());
+        return -1;
+    }
+    return count;
+}
+
+const char *directAddress(JNIEnv *env, jobject buffer, jint length) {
+    if (buffer == nullptr || length < 0) {
+        return nullptr;
+    }
+    void *address = env->GetDirectBufferAddress(buffer);
+    if (address == nullptr || length > env->GetDirectBufferCapacity(buffer)) {
+        LOGE("Not a direct buffer of %d bytes", length);
+        return nullptr;
+    }
+    return static_cast<const char *>(address);
+}
+
+/*
+ * Drop everything in the KV cache past the system prompt
+ */
+void trimToPrefix(Session *session) {
+    int prefixLength = static_cast<int>(session->prefix.size());
+    llama_memory_seq_rm(llama_get_memory(session->ctx), 0, prefixLength, -1);
+    session->nPast = prefixLength;
+    session->pending = -1;
+}
+
+/*
+ * Sample the next token from the logits of the last decode. Grammar
+ * checking every entry of a 256k vocabulary is the expensive part, so the
+ * unconstrained pick is tried first and the grammar only masks the full
+ * candidate list when it rejects that pick.
+ */
+llama_token sample(Session *session) {
+    const float *logits = llama_get_logits_ith(session->ctx, -1);
+    std::vector<llama_token_data> &candidates = session->candidates;
+    int vocabSize = static_cast<int>(candidates.size());
+
+    for (int id = 0; id < vocabSize; id++) {
+        candidates[id] = llama_token_data{id, logits[id], 0.0f};
+    }
+    llama_token_data_array all{candidates.data(), candidates.size(), -1, false};
+    llama_sampler_apply(session->sampler, &all);
+    llama_token token = all.data[all.selected].id;
+
+    if (session->grammar != nullptr) {
+        llama_token_data single{token, 1.0f, 0.0f};
+        llama_token_data_array check{&single, 1, -1, false};
+        llama_sampler_apply(session->grammar, &check);
+        if (std::isinf(single.logit)) {
+            for (int id = 0; id < vocabSize; id++) {
+                candidates[id] = llama_token_data{id, logits[id], 0.0f};
+            }
+            all = llama_token_data_array{candidates.data(), candidates.size(), -1, false};
+            llama_sampler_apply(session->grammar, &all);
+            llama_sampler_apply(session->sampler, &all);
+            token = all.data[all.selected].id;
+        }
+        llama_sampler_accept(session->grammar, token);
+    }
+    llama_sampler_accept(session->sampler, token);
+    return token;
+}
+
+bool isHotTensor(const char *name) {
+    if (strncmp(name, "token_embd.", 11) == 0 || strncmp(name, "output.", 7) == 0
+            || strncmp(name, "output_norm.", 12) == 0) {
+        return true;
+    }
+    return strncmp(name, "blk.", 4) == 0 && atoi(name + 4) < HOT_BLOCKS;
+}
+
+/*
+ * Page-aligned file ranges of the token embeddings, output head and first
+ * blocks, read from the gguf tensor offsets. Empty if the header cannot be
+ * read.
+ */
+std::vector<std::pair<size_t, size_t>> hotTensorRanges(const char *path, size_t fileSize) {
+    std::vector<std::pair<size_t, size_t>> ranges;
+    gguf_init_params params{true, nullptr};
+    gguf_context *gguf = gguf_init_from_file(path, params);
+    if (gguf == nullptr) {
+        LOGW("Cannot read tensor offsets");
+        return ranges;
+    }
+    size_t page = static_cast<size_t>(sysconf(_SC_PAGESIZE));
+    size_t dataOffset = gguf_get_data_offset(gguf);
+    int64_t tensorCount = gguf_get_n_tensors(gguf);
+    for (int64_t i = 0; i < tensorCount; i++) {
+        if (!isHotTensor(gguf_get_tensor_name(gguf, i))) {
+            continue;
+        }
+        size_t start = dataOffset + gguf_get_tensor_offset(gguf, i);
+        size_t end = std::min(fileSize, start + gguf_get_tensor_size(gguf, i));
+        start &= ~(page - 1);
+        if (end > start) {
+            ranges.emplace_back(start, end - start);
+        }
+    }
+    gguf_free(gguf);
+    return ranges;
+}
+
+/*
+ * mlock the pages of the token embeddings, output head and first blocks.
+ * The ranges are mapped separately from llama.cpp's mapping of the same
+ * file, but both share the page cache, so locked pages stay resident for
+ * the model too.
+ */
+void lockHotTensors(Session *session, const char *path) {
+    int fd = open(path, O_RDONLY);
+    struct stat info{};
+    if (fd < 0 || fstat(fd, &info) != 0) {
+        LOGW("Cannot open model to lock hot tensors: %s", strerror(errno));
+        if (fd >= 0) {
+            close(fd);
+        }
+        return;
+    }
+
+    size_t locked = 0;
+    for (const auto &range : hotTensorRanges(path, static_cast<size_t>(info.st_size))) {
+        void *address = mmap(nullptr, range.second, PROT_READ, MAP_SHARED, fd,
+                             static_cast<off_t>(range.first));
+        if (address == MAP_FAILED) {
+            LOGW("Cannot map hot tensor at %zu: %s", range.first, strerror(errno));
+            continue;
+        }
+        if (mlock(address, range.second) != 0) {
+            // Usually RLIMIT_MEMLOCK; the rest would fail the same way
+            LOGW("mlock of hot tensor at %zu failed: %s", range.first, strerror(errno));
+            munmap(address, range.second);
+            break;
+        }
+        session->lockedRanges.emplace_back(address, range.second);
+        locked += range.second;
+    }
+    close(fd);
+    LOGI("Locked %zu MB of hot tensors", locked / (1024 * 1024));
+}
+
+/*
+ * Start readahead of the hot tensor ranges only, after the model is mapped,
+ * so the first decode does not fault them in one page at a time. The rest
+ * of the file is left to fault in on demand. llama.cpp does not expose its
+ * mapping; WILLNEED on the file descriptor starts the same page cache
+ * readahead madvise(MADV_WILLNEED) would on that mapping.
+ */
+void prefetchHotTensors(const char *path) {
+    int fd = open(path, O_RDONLY);
+    struct stat info{};
+    if (fd < 0 || fstat(fd, &info) != 0) {
+        LOGW("Cannot open model to prefetch hot tensors: %s", strerror(errno));
+        if (fd >= 0) {
+            close(fd);
+        }
+        return;
+    }
+
+    size_t advised = 0;
+    for (const auto &range : hotTensorRanges(path, static_cast<size_t>(info.st_size))) {
+        if (posix_fadvise(fd, static_cast<off_t>(range.first), static_cast<off_t>(range.second),
+                          POSIX_FADV_WILLNEED) == 0) {
+            advised += range.second;
+        }
+    }
+    close(fd);
+    LOGI("Prefetching %zu MB of hot tensors", advised / (1024 * 1024));
+}
+
+void freeSession(Session *session) {
+    for (const auto &range : session->lockedRanges) {
+        munmap(range.first, range.second);
+    }
+    if (session->grammar != nullptr) {
+        llama_sampler_free(session->grammar);
+    }
+    if (session->sampler != nullptr) {
+        llama_sampler_free(session->sampler);
+    }
+    if (session->batch.token != nullptr) {
+        llama_batch_free(session->batch);
+    }
+    if (session->ctx != nullptr) {
+        llama_free(session->ctx);
+    }
+    if (session->model != nullptr) {
+        llama_model_free(session->model);
+    }
+    delete session;
+}
+
+} // namespace
+
+/*
+ * Whether this CPU can run the ggml kernels the library was built with.
+ * arm64 builds use dotprod, which ARMv8.0 cores such as the Cortex-A53 lack.
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeIsCpuSupported(
+        JNIEnv * /* env */,
+        jclass /* clazz */) {
+#if defined(MINIJARVIS_REQUIRE_DOTPROD) && defined(__aarch64__)
+    return (getauxval(AT_HWCAP) & HWCAP_ASIMDDP) != 0 ? JNI_TRUE : JNI_FALSE;
+#else
+    return JNI_TRUE;
+#endif
+}
 
 /*
  * Initialize the LLM model
- * 
+ *
  * Parameters:
  *   modelPath: Path to the GGUF model file
  *   contextSize: Context window size (e.g., 1024)
- *   temperature: Sampling temperature (e.g., 0.2f)
+ *   temperature: Sampling temperature (e.g., 0.2f), 0 for greedy
  *   maxTokens: Maximum tokens to generate (e.g., 120)
- * 
- * Returns: Pointer to the model context (0 on failure)
+ *   useMmap: Map the file read-only instead of reading weights into the heap
+ *   lockHotLayers: mlock token embeddings, output head and the first blocks
+ *   prefetch: Read the hot tensors ahead once the model is mapped (mmap only,
+ *             and not when they are locked, which already reads them)
+ *
+ * Returns: Pointer to the session (0 on failure)
  */
 extern "C" JNIEXPORT jlong JNICALL
 Java_com_minijarvis_app_llm_LLMEngine_nativeInit(
@@ -37,68 +408,339 @@ Java_com_minijarvis_app_llm_LLMEngine_nativeInit(
         jstring modelPath,
         jint contextSize,
         jfloat temperature,
-        jint maxTokens) {
-    
-    // In production, this would:
-    // 1. Convert jstring to C string2. Initialize llama
-    // .cpp model with ggml_init
-    // 3. Load model from file
-    // 4. Initialize chat context
-    // 5. Return pointer to context as jlong
-    
-    LOGI("Initializing LLM model at: %s", env->GetStringUTFChars(modelPath, nullptr));
-    
-    // Placeholder: return 0 to indicate model not loaded
-    // In production, return pointer to llama_context
-    return 0;
-}
-
-/*
- * Generate completion from prompt
- * 
+        jint maxTokens,
+        jboolean useMmap,
+        jboolean lockHotLayers,
+        jboolean prefetch) {
+
+    JniString path(env, modelPath);
+    if (path.get() == nullptr) {
+        return 0;
+    }
+    LOGI("Initializing LLM model at: %s", path.get());
+
+    llama_log_set(logCallback, nullptr);
+    llama_backend_init();
+
+    Session *session = new Session();
+    llama_model_params modelParams = llama_model_default_params();
+    modelParams.n_gpu_layers = 0;
+    modelParams.use_mmap = useMmap;
+    // Locking all 1.5 GB is not an option on phones; see lockHotTensors
+    modelParams.use_mlock = false;
+    session->model = llama_model_load_from_file(path.get(), modelParams);
+    if (session->model == nullptr) {
+        LOGE("Failed to load model");
+        freeSession(session);
+        return 0;
+    }
+    if (lockHotLayers && useMmap) {
+        lockHotTensors(session, path.get());
+    } else if (prefetch && useMmap) {
+        prefetchHotTensors(path.get());
+    }
+
+    session->contextSize = contextSize;
+    session->batchSize = std::min<int>(MAX_BATCH, contextSize);
+    session->maxTokens = maxTokens;
+
+    llama_context_params contextParams = llama_context_default_params();
+    contextParams.n_ctx = static_cast<uint32_t>(contextSize);
+    contextParams.n_batch = static_cast<uint32_t>(session->batchSize);
+    contextParams.n_ubatch = static_cast<uint32_t>(session->batchSize);
+    contextParams.n_seq_max = 1;
+    contextParams.n_threads = threadCount();
+    contextParams.n_threads_batch = threadCount();
+    contextParams.no_perf = true;
+    session->ctx = llama_init_from_model(session->model, contextParams);
+    if (session->ctx == nullptr) {
+        LOGE("Failed to create context of %d tokens", contextSize);
+        freeSession(session);
+        return 0;
+    }
+
+    session->vocab = llama_model_get_vocab(session->model);
+    session->batch = llama_batch_init(session->batchSize, 0, 1);
+    session->tokens.resize(static_cast<size_t>(contextSize));
+    session->candidates.resize(static_cast<size_t>(llama_vocab_n_tokens(session->vocab)));
+
+    session->sampler = llama_sampler_chain_init(llama_sampler_chain_default_params());
+    if (temperature > 0.0f) {
+        llama_sampler_chain_add(session->sampler, llama_sampler_init_top_k(TOP_K));
+        llama_sampler_chain_add(session->sampler, llama_sampler_init_temp(temperature));
+        llama_sampler_chain_add(session->sampler, llama_sampler_init_dist(LLAMA_DEFAULT_SEED));
+    } else {
+        llama_sampler_chain_add(session->sampler, llama_sampler_init_greedy());
+    }
+
+    LOGI("Model loaded: %d vocab, %d context, %d threads", static_cast<int>(session->candidates.size()),
+         contextSize, threadCount());
+    return reinterpret_cast<jlong>(session);
+}
+
+/*
+ * Replace the grammar that constrains sampling
+ *
+ * Parameters:
+ *   modelPtr: Pointer to the session from nativeInit
+ *   grammar: Direct buffer holding a GBNF grammar as UTF-8 with a "root" rule
+ *   length: Bytes of grammar; 0 for free decoding
+ *
+ * Returns: false if the grammar does not parse (decoding is then free)
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeSetGrammar(
+        JNIEnv *env,
+        jobject /* this */,
+        jlong modelPtr,
+        jobject grammar,
+        jint length) {
+
+    Session *session = toSession(modelPtr);
+    if (session->grammar != nullptr) {
+        llama_sampler_free(session->grammar);
+        session->grammar = nullptr;
+    }
+    if (length == 0) {
+        return JNI_TRUE;
+    }
+    const char *text = directAddress(env, grammar, length);
+    if (text == nullptr) {
+        return JNI_FALSE;
+    }
+    // The grammar parser wants a terminated string
+    std::string source(text, static_cast<size_t>(length));
+    session->grammar = llama_sampler_init_grammar(session->vocab, source.c_str(), "root");
+    if (session->grammar == nullptr) {
+        LOGE("Grammar does not parse");
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+/*
+ * Evaluate the constant system prompt into the KV cache
+ *
  * Parameters:
- *   modelPtr: Pointer to model context from nativeInit
- *   prompt: Input prompt string
- * 
- * Returns: Generated text response
+ *   modelPtr: Pointer to the session from nativeInit
+ *   prefix: Direct buffer holding the system prompt as UTF-8
+ *   length: Bytes of prefix
+ *
+ * Returns: Number of prefix tokens held in the KV cache (0 on failure)
  */
-extern "C" JNIEXPORT jstring JNICALL
-Java_com_minijarvis_app_llm_LLMEngine_nativeGenerate(
+extern "C" JNIEXPORT jint JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeEvalPrefix(
         JNIEnv *env,
         jobject /* this */,
         jlong modelPtr,
-        jstring prompt) {
-    
-    // In production, this would:
-    // 1. Convert jstring to C string
-    // 2. Tokenize prompt
-    // 3. Run inference loop with llama_decode/llama_sample
-    // 4. Stop at max_tokens or EOS token
-    // 5. Detokenize and return result
-    
-    LOGI("Generating response for prompt");
-    
-    // Placeholder: return empty string
-    // In production, return actual generated text
-    return env->NewStringUTF("");
+        jobject prefix,
+        jint length) {
+
+    Session *session = toSession(modelPtr);
+    const char *text = directAddress(env, prefix, length);
+    session->prefix.clear();
+    llama_memory_clear(llama_get_memory(session->ctx), true);
+    session->nPast = 0;
+    session->pending = -1;
+    if (text == nullptr) {
+        return 0;
+    }
+
+    int count = tokenize(session, text, length, true);
+    if (count <= 0 || !decodeTokens(session, session->tokens.data(), count, false)) {
+        llama_memory_clear(llama_get_memory(session->ctx), true);
+        session->nPast = 0;
+        return 0;
+    }
+    session->prefix.assign(session->tokens.begin(), session->tokens.begin() + count);
+    return count;
+}
+
+/*
+ * Persist the KV state of the evaluated prefix
+ *
+ * Parameters:
+ *   modelPtr: Pointer to the session from nativeInit
+ *   statePath: Destination file next to the model
+ *
+ * Returns: true if the snapshot was written
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeSaveState(
+        JNIEnv *env,
+        jobject /* this */,
+        jlong modelPtr,
+        jstring statePath) {
+
+    Session *session = toSession(modelPtr);
+    JniString path(env, statePath);
+    if (path.get() == nullptr || session->prefix.empty()) {
+        return JNI_FALSE;
+    }
+    trimToPrefix(session);
+    bool saved = llama_state_save_file(session->ctx, path.get(), session->prefix.data(),
+                                       session->prefix.size());
+    return saved ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Restore a KV state snapshot written by nativeSaveState
+ *
+ * Parameters:
+ *   modelPtr: Pointer to the session from nativeInit
+ *   statePath: Snapshot file next to the model
+ *
+ * Returns: Number of prefix tokens restored (0 on failure)
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeLoadState(
+        JNIEnv *env,
+        jobject /* this */,
+        jlong modelPtr,
+        jstring statePath) {
+
+    Session *session = toSession(modelPtr);
+    JniString path(env, statePath);
+    if (path.get() == nullptr) {
+        return 0;
+    }
+    session->prefix.resize(static_cast<size_t>(session->contextSize));
+    size_t count = 0;
+    bool loaded = llama_state_load_file(session->ctx, path.get(), session->prefix.data(),
+                                        session->prefix.size(), &count);
+    if (!loaded || count == 0) {
+        LOGW("Cannot restore KV state");
+        session->prefix.clear();
+        llama_memory_clear(llama_get_memory(session->ctx), true);
+        session->nPast = 0;
+        return 0;
+    }
+    session->prefix.resize(count);
+    session->nPast = static_cast<int>(count);
+    session->pending = -1;
+    return static_cast<jint>(count);
+}
+
+/*
+ * Prefill a prompt for generation
+ *
+ * If a system prompt prefix has been evaluated or restored, the prompt is
+ * only the suffix that follows it: the KV cache is trimmed back to the
+ * prefix before the suffix is decoded, and no BOS is added.
+ *
+ * Parameters:
+ *   modelPtr: Pointer to the session from nativeInit
+ *   prompt: Direct buffer holding the prompt as UTF-8
+ *   length: Bytes of prompt
+ *
+ * Returns: Number of prompt tokens decoded, or -1 on failure
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeBeginGeneration(
+        JNIEnv *env,
+        jobject /* this */,
+        jlong modelPtr,
+        jobject prompt,
+        jint length) {
+
+    Session *session = toSession(modelPtr);
+    const char *text = directAddress(env, prompt, length);
+    if (text == nullptr) {
+        return -1;
+    }
+    trimToPrefix(session);
+    session->generated = 0;
+    llama_sampler_reset(session->sampler);
+    if (session->grammar != nullptr) {
+        llama_sampler_reset(session->grammar);
+    }
+
+    int count = tokenize(session, text, length, session->prefix.empty());
+    if (count <= 0) {
+        return -1;
+    }
+    if (session->nPast + count >= session->contextSize) {
+        LOGE("Prompt of %d tokens does not fit after %d cached tokens", count, session->nPast);
+        return -1;
+    }
+    if (!decodeTokens(session, session->tokens.data(), count, true)) {
+        trimToPrefix(session);
+        return -1;
+    }
+    return count;
+}
+
+/*
+ * Generate the next token of the prompt begun by nativeBeginGeneration
+ *
+ * Parameters:
+ *   modelPtr: Pointer to the session from nativeInit
+ *   out: Direct buffer the token's UTF-8 bytes are written to. A piece
+ *        may end inside a multi-byte character that the next one completes.
+ *   offset: Position in out to write at
+ *
+ * Returns: Number of bytes written (0 for a token without text), or -1 at
+ *          end of generation: EOS, maxTokens, a full context or an error
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_minijarvis_app_llm_LLMEngine_nativeNextToken(
+        JNIEnv *env,
+        jobject /* this */,
+        jlong modelPtr,
+        jobject out,
+        jint offset) {
+
+    Session *session = toSession(modelPtr);
+    if (session->generated >= session->maxTokens) {
+        return -1;
+    }
+    if (session->pending >= 0) {
+        if (session->nPast >= session->contextSize) {
+            return -1;
+        }
+        llama_token token = session->pending;
+        session->pending = -1;
+        if (!decodeTokens(session, &token, 1, true)) {
+            return -1;
+        }
+    }
+
+    llama_token token = sample(session);
+    if (llama_vocab_is_eog(session->vocab, token)) {
+        return -1;
+    }
+    session->pending = token;
+    session->generated++;
+
+    char *buffer = static_cast<char *>(env->GetDirectBufferAddress(out));
+    jlong capacity = env->GetDirectBufferCapacity(out);
+    if (buffer == nullptr || offset < 0 || offset > capacity) {
+        LOGE("Invalid output buffer");
+        return -1;
+    }
+    int written = llama_token_to_piece(session->vocab, token, buffer + offset,
+                                       static_cast<int32_t>(capacity - offset), 0, false);
+    if (written < 0) {
+        LOGE("Piece of %d bytes does not fit the output buffer", -written);
+        return -1;
+    }
+    return written;
 }
 
 /*
  * Cleanup model resources
- * 
+ *
  * Parameters:
- *   modelPtr: Pointer to model context from nativeInit
+ *   modelPtr: Pointer to the session from nativeInit
  */
 extern "C" JNIEXPORT void JNICALL
 Java_com_minijarvis_app_llm_LLMEngine_nativeCleanup(
-        JNIEnv *env,
+        JNIEnv * /* env */,
         jobject /* this */,
         jlong modelPtr) {
-    
-    // In production, this would:
-    // 1. Free the llama_context
-    // 2. Free any allocated memory
-    // 3. Reset ggml backend
-    
+
+    if (modelPtr != 0) {
+        freeSession(toSession(modelPtr));
+    }
     LOGI("Cleaning up LLM model");
-}
\ No newline at end of file
+}
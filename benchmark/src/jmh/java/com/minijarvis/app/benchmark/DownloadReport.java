@@ -0,0 +1,66 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.service.ChunkManifest;
+import com.minijarvis.app.service.SegmentedDownloader;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints the throughput of SegmentedDownloader with one connection against
+ * several, from a local StandInServer capped per connection. Correctness of
+ * resume, fallback and repair is covered by SegmentedDownloaderTest.
+ * Usage: DownloadReport [sizeMb] [perConnectionMbPerSecond]
+ */
+public final class DownloadReport {
+    private static final int DEFAULT_SIZE_MB = 32;
+    private static final int DEFAULT_RATE_MB = 16;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private DownloadReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE_MB;
+        long rate = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RATE_MB) * 1024L * 1024L;
+        byte[] content = new byte[sizeMb * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        File dir = Files.createTempDirectory("download-report").toFile();
+        boolean ok = true;
+
+        for (int segments : new int[]{1, 4}) {
+            ok &= measure(content, rate, dir, segments);
+        }
+        dir.delete();
+
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean measure(byte[] content, long rate, File dir, int segments) throws Exception {
+        StandInServer server = new StandInServer(content, rate, true);
+        File target = new File(dir, "segments" + segments + ".gguf");
+        AtomicLong reports = new AtomicLong();
+        try {
+            long start = System.nanoTime();
+            new SegmentedDownloader(server.url(), target)
+                    .setSegments(segments)
+                    .setChunkSize(CHUNK_SIZE)
+                    .setProgressListener((done, total) -> reports.incrementAndGet())
+                    .download();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            boolean sameBytes = Arrays.equals(content, Files.readAllBytes(target.toPath()));
+            System.out.printf("%-14s %-6s %.1f MB/s, %d progress reports%n", segments + " segment(s)",
+                    sameBytes ? "ok" : "FAILED", content.length / seconds / (1024 * 1024), reports.get());
+            return sameBytes;
+        } finally {
+            server.stop();
+            target.delete();
+            ChunkManifest.delete(target);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.minijarvis.app.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.minijarvis.app.accessibility.RecordedNode;
+import com.minijarvis.app.model.ActionModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded accessibility trees under resources/fixtures/&lt;app&gt;/&lt;screen&gt;.json
+ * and the task corpus in resources/fixtures/corpus.json
+ */
+public final class Fixtures {
+    private static final Gson GSON = new Gson();
+
+    private Fixtures() {
+    }
+
+    /**
+     * Instructions run one after another from a start screen, expected to
+     * leave the app on the end screen
+     */
+    public static class Task {
+        @SerializedName("name")
+        public String name;
+
+        @SerializedName("app")
+        public String app;
+
+        @SerializedName("start")
+        public String start;
+
+        @SerializedName("end")
+        public String end;
+
+        @SerializedName("instructions")
+        public List<String> instructions;
+
+        // First action decided for each instruction
+        @SerializedName("expected")
+        public List<ActionModel> expected;
+    }
+
+    public static List<Task> corpus() {
+        try (Reader reader = open("/fixtures/corpus.json")) {
+            return Arrays.asList(GSON.fromJson(reader, Task[].class));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read corpus", e);
+        }
+    }
+
+    public static Task task(String name) {
+        for (Task task : corpus()) {
+            if (task.name.equals(name)) {
+                return task;
+            }
+        }
+        throw new IllegalArgumentException("No task: " + name);
+    }
+
+    /**
+     * One recorded screen, not bound to a replay
+     */
+    public static RecordedNode screen(String app, String name) {
+        try (Reader reader = open("/fixtures/" + app + "/" + name + ".json")) {
+            return RecordedNode.fromJson(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read screen " + app + "/" + name, e);
+        }
+    }
+
+    /**
+     * Every screen of an app reachable from start through "opens" links
+     */
+    public static Map<String, RecordedNode> app(String app, String start) {
+        Map<String, RecordedNode> screens = new LinkedHashMap<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(start);
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            if (!screens.containsKey(name)) {
+                RecordedNode root = screen(app, name);
+                screens.put(name, root);
+                addLinks(root, pending);
+            }
+        }
+        return screens;
+    }
+
+    private static void addLinks(RecordedNode node, Deque<String> pending) {
+        if (node.opens != null) {
+            pending.add(node.opens);
+        }
+        if (node.children != null) {
+            for (RecordedNode child : node.children) {
+                addLinks(child, pending);
+            }
+        }
+    }
+
+    private static Reader open(String path) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new IllegalArgumentException("No fixture: " + path);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}
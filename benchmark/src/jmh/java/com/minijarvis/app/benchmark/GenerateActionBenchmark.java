@@ -0,0 +1,55 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MockLLMEngine.generateAction on synthetic screens, for an exact-label
+ * click near the end of the list, a partial click and a type command
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GenerateActionBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int elements;
+
+    private final MockLLMEngine engine = new MockLLMEngine(null);
+    private UIStructure uiStructure;
+    private String exactClick;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.synthetic(elements);
+        uiStructure.getLowerClickable();
+        exactClick = "click " + uiStructure.clickable[uiStructure.clickable.length - 1];
+    }
+
+    @Benchmark
+    public ActionModel exactClick() {
+        return engine.generateAction(exactClick, uiStructure);
+    }
+
+    @Benchmark
+    public ActionModel partialClick() {
+        return engine.generateAction("please tap archive", uiStructure);
+    }
+
+    @Benchmark
+    public ActionModel type() {
+        return engine.generateAction("type hello there", uiStructure);
+    }
+}
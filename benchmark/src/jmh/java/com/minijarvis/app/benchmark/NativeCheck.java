@@ -0,0 +1,129 @@
+package com.minijarvis.app.benchmark;
+
+import android.content.Context;
+
+import com.minijarvis.app.llm.LLMEngine;
+import com.minijarvis.app.llm.ModelRegistry;
+import com.minijarvis.app.llm.ModelVariant;
+import com.minijarvis.app.model.ActionModel;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Drives the llama.cpp JNI bridge built for this host through LLMEngine,
+ * the same calls the app makes: load a GGUF model, prefill and persist the
+ * system prompt, restore it on a second load, pick a grammar-constrained
+ * action on a recorded screen and time free decoding. Any small GGUF
+ * works; the output is only checked for shape, not sense. Exits non-zero
+ * on any failed check.
+ * Usage: NativeCheck modelPath [contextLength]
+ */
+public final class NativeCheck {
+    private static final int DEFAULT_CONTEXT = 2048;
+
+    private NativeCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args[0].isEmpty()) {
+            System.err.println("Usage: NativeCheck modelPath [contextLength]");
+            System.exit(2);
+        }
+        File model = new File(args[0]).getAbsoluteFile();
+        int contextLength = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONTEXT;
+        if (!model.isFile()) {
+            System.err.println("No model at " + model);
+            System.exit(2);
+        }
+        if (!report("library", LLMEngine.isNativeAvailable(),
+                "libminijarvis_jni from " + System.getProperty("java.library.path"))) {
+            System.exit(1);
+        }
+
+        // ModelManager looks for models under filesDir/models
+        File dir = Files.createTempDirectory("native-check").toFile();
+        File modelDir = new File(dir, "models");
+        modelDir.mkdirs();
+        Files.createSymbolicLink(new File(modelDir, model.getName()).toPath(), model.toPath());
+        Context context = new Context() {
+            @Override
+            public File getFilesDir() {
+                return dir;
+            }
+        };
+        ModelVariant variant = hostVariant(model, contextLength);
+
+        boolean allPassed;
+        LLMEngine engine = new LLMEngine(context);
+        engine.setVariant(variant);
+        try {
+            boolean loaded = engine.initialize();
+            allPassed = report("load", loaded, String.format("model %d ms, system prompt prefill %d ms",
+                    engine.getModelLoadMs(), engine.getPrefixMs()));
+            if (loaded) {
+                allPassed &= checkDecoding(engine);
+            }
+        } finally {
+            engine.cleanup();
+            delete(dir);
+        }
+
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkDecoding(LLMEngine engine) {
+        long prefillMs = engine.getPrefixMs();
+        ActionModel action = engine.generateAction("open wifi settings", Screens.load("settings"),
+                Collections.<ActionModel>emptyList());
+        boolean passed = report("constrained", action.action != null && !action.action.isEmpty(),
+                "decoded " + action);
+
+        long warmUpMs = engine.warmUp();
+        float tokensPerSecond = engine.measureTokensPerSecond();
+        passed &= report("free decode", tokensPerSecond > 0,
+                String.format("%.1f tokens/s, warm-up %d ms", tokensPerSecond, warmUpMs));
+
+        // A second load restores the KV snapshot written by the first
+        engine.cleanup();
+        boolean restored = engine.initialize();
+        passed &= report("restore", restored, String.format("system prompt restored in %d ms, prefill took %d ms",
+                engine.getPrefixMs(), prefillMs));
+        if (restored) {
+            ActionModel again = engine.generateAction("go back", Screens.load("chat"),
+                    Collections.<ActionModel>emptyList());
+            passed &= report("after restore", again.action != null && !again.action.isEmpty(),
+                    "decoded " + again);
+        }
+        return passed;
+    }
+
+    /**
+     * Registry entry for the given file, sized so ModelManager counts it as installed
+     */
+    private static ModelVariant hostVariant(File model, int contextLength) {
+        String json = "{\"models\": [{\"id\": \"host\", \"family\": \"host\", \"quantization\": \"any\", " +
+                "\"url\": \"file://" + model.getPath() + "\", \"file\": \"" + model.getName() + "\", " +
+                "\"size_bytes\": " + model.length() + ", \"context_length\": " + contextLength + "}]}";
+        return ModelRegistry.fromJson(new StringReader(json)).get("host");
+    }
+
+    private static void delete(File target) {
+        File[] children = target.isDirectory() && !Files.isSymbolicLink(target.toPath()) ? target.listFiles() : null;
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        target.delete();
+    }
+
+    private static boolean report(String name, boolean passed, String detail) {
+        System.out.printf("%-14s %-6s %s%n", name, passed ? "ok" : "FAILED", detail);
+        return passed;
+    }
+}
@@ -0,0 +1,46 @@
+package com.minijarvis.app.benchmark;
+
+import com.google.gson.Gson;
+import com.minijarvis.app.llm.CompactUIEncoder;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of the Gson and compact prompt encodings
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptEncodingBenchmark {
+
+    @Param({"settings", "chat", "feed", "login"})
+    public String screen;
+
+    private final Gson gson = new Gson();
+    private UIStructure uiStructure;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.load(screen);
+    }
+
+    @Benchmark
+    public String gsonJson() {
+        return gson.toJson(uiStructure);
+    }
+
+    @Benchmark
+    public String compact() {
+        return CompactUIEncoder.encode(uiStructure).getText();
+    }
+}
@@ -0,0 +1,42 @@
+package com.minijarvis.app.benchmark;
+
+import com.google.gson.Gson;
+import com.minijarvis.app.llm.CompactUIEncoder;
+import com.minijarvis.app.model.UIStructure;
+
+/**
+ * Prints estimated prompt tokens for each recorded screen under the Gson
+ * and compact encodings, plus the prefill time saved at a given rate.
+ * Usage: PromptSizeReport [prefillTokensPerSecond]
+ */
+public final class PromptSizeReport {
+    // Typical Gemma 2B Q4_0 prefill rate on a mid-range arm64 phone
+    private static final double DEFAULT_PREFILL_TPS = 60.0;
+
+    private PromptSizeReport() {
+    }
+
+    public static void main(String[] args) {
+        double prefillTps = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_PREFILL_TPS;
+        Gson gson = new Gson();
+
+        System.out.printf("%-10s %8s %8s %8s %10s%n", "screen", "json", "compact", "saved", "saved_ms");
+        int totalJson = 0;
+        int totalCompact = 0;
+        for (String name : Screens.NAMES) {
+            UIStructure ui = Screens.load(name);
+            int json = TokenEstimator.estimate(gson.toJson(ui));
+            int compact = TokenEstimator.estimate(CompactUIEncoder.encode(ui).getText());
+            totalJson += json;
+            totalCompact += compact;
+            print(name, json, compact, prefillTps);
+        }
+        print("total", totalJson, totalCompact, prefillTps);
+    }
+
+    private static void print(String name, int json, int compact, double prefillTps) {
+        double saved = json == 0 ? 0 : 100.0 * (json - compact) / json;
+        double savedMs = (json - compact) * 1000.0 / prefillTps;
+        System.out.printf("%-10s %8d %8d %7.1f%% %10.0f%n", name, json, compact, saved, savedMs);
+    }
+}
@@ -0,0 +1,51 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.util.ActionExecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end corpus tasks on recorded screens: tree walk, extraction, rule
+ * decision, target validation, node lookup and action, through the same
+ * AgentLoop and ActionExecutor as on device. One operation is a whole task;
+ * ReplayReport breaks the cost down per step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplayBenchmark {
+
+    @Param({"add_wifi_network", "dark_theme", "reply_to_alice", "new_chat"})
+    public String task;
+
+    private Fixtures.Task fixture;
+    private ReplayController controller;
+    private AgentLoop loop;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = Fixtures.task(task);
+        controller = new ReplayController(Fixtures.app(fixture.app, fixture.start), fixture.start);
+        MockLLMEngine engine = new MockLLMEngine(null);
+        loop = new AgentLoop(engine::generateAction, controller, new ActionExecutor(controller));
+        if (!controller.runTask(fixture, loop)) {
+            throw new IllegalStateException("Task does not replay: " + task);
+        }
+    }
+
+    @Benchmark
+    public boolean runTask() throws Exception {
+        return controller.runTask(fixture, loop);
+    }
+}
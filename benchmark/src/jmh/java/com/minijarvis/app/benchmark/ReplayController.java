@@ -0,0 +1,155 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.accessibility.RecordedNode;
+import com.minijarvis.app.accessibility.UIController;
+import com.minijarvis.app.accessibility.UITree;
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Stands in for the accessibility service on recorded screens. Extraction
+ * and lookups run through the production UITree; a click on a node with an
+ * "opens" link switches screens and back pops them, so the AgentLoop sees
+ * a multi-screen flow with no device attached.
+ */
+public class ReplayController implements UIController, UITree.RootSource, RecordedNode.ActionListener {
+    private static final AgentLoop.StepListener NO_LISTENER = new AgentLoop.StepListener() {
+        @Override
+        public void onObserved(UIStructure uiStructure) {
+        }
+
+        @Override
+        public void onDecided(ActionModel action) {
+        }
+
+        @Override
+        public void onStep(AgentLoop.StepResult step) {
+        }
+    };
+
+    private final Map<String, RecordedNode> screens;
+    private final UITree tree = new UITree(this);
+    private final Deque<String> backStack = new ArrayDeque<>();
+    private String current;
+    private int steps;
+    private RecordedNode.ActionListener observer;
+
+    public ReplayController(Map<String, RecordedNode> screens, String start) {
+        this.screens = screens;
+        int windowId = 0;
+        for (RecordedNode root : screens.values()) {
+            root.bind(++windowId, this);
+        }
+        reset(start);
+    }
+
+    public void reset(String start) {
+        if (!screens.containsKey(start)) {
+            throw new IllegalArgumentException("No screen: " + start);
+        }
+        backStack.clear();
+        current = start;
+    }
+
+    public String getCurrentScreen() {
+        return current;
+    }
+
+    public UITree getTree() {
+        return tree;
+    }
+
+    /**
+     * Also report every node action to observer, e.g. to check which node a test acted on
+     */
+    public void setObserver(RecordedNode.ActionListener observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Steps executed by the last runTask()
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Run every instruction of a task from its start screen
+     *
+     * @return true if all instructions completed and the task ended on its
+     *         end screen
+     */
+    public boolean runTask(Fixtures.Task task, AgentLoop loop) throws Exception {
+        reset(task.start);
+        steps = 0;
+        for (String instruction : task.instructions) {
+            AgentLoop.Result result = loop.run(instruction, NO_LISTENER);
+            steps += result.steps.size();
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        return task.end == null || task.end.equals(current);
+    }
+
+    @Override
+    public RecordedNode getRootInActiveWindow() {
+        return screens.get(current);
+    }
+
+    @Override
+    public void onAction(RecordedNode node, String action) {
+        if (observer != null) {
+            observer.onAction(node, action);
+        }
+        if (RecordedNode.ACTION_CLICK.equals(action) && node.opens != null) {
+            backStack.push(current);
+            current = node.opens;
+        }
+    }
+
+    @Override
+    public boolean isShowing(RecordedNode root) {
+        return root == screens.get(current);
+    }
+
+    @Override
+    public UIStructure extractCurrentUI() {
+        return tree.extractCurrentUI();
+    }
+
+    @Override
+    public boolean performClick(String targetLabel) {
+        return tree.performClick(targetLabel);
+    }
+
+    @Override
+    public boolean performType(String targetLabel, String text) {
+        return tree.performType(targetLabel, text);
+    }
+
+    @Override
+    public boolean performScroll(String direction) {
+        return tree.performScroll(direction);
+    }
+
+    @Override
+    public boolean performBack() {
+        if (backStack.isEmpty()) {
+            return false;
+        }
+        current = backStack.pop();
+        return true;
+    }
+
+    // Recorded screens change synchronously, there is nothing to wait for
+    @Override
+    public boolean awaitUISettle(long maxWaitMs) {
+        return true;
+    }
+}
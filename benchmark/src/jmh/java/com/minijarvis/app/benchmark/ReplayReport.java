@@ -0,0 +1,74 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.util.ActionExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Replays every corpus task and prints decision latency and allocation per
+ * executed step. Exits non-zero if a task no longer replays to its end
+ * screen, so it doubles as an offline end-to-end check.
+ * Usage: ReplayReport [iterations]
+ */
+public final class ReplayReport {
+    private static final int DEFAULT_ITERATIONS = 2000;
+
+    private ReplayReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        MockLLMEngine engine = new MockLLMEngine(null);
+        boolean allPassed = true;
+
+        System.out.printf("%-18s %6s %10s %10s  %s%n", "task", "steps", "us/step", "B/step", "result");
+        for (Fixtures.Task task : Fixtures.corpus()) {
+            ReplayController controller = new ReplayController(Fixtures.app(task.app, task.start), task.start);
+            AgentLoop loop = new AgentLoop(engine::generateAction, controller, new ActionExecutor(controller));
+
+            boolean passed = controller.runTask(task, loop);
+            int steps = controller.getSteps();
+            if (!passed || steps == 0) {
+                allPassed = false;
+                System.out.printf("%-18s %6d %10s %10s  FAILED on %s%n", task.name, steps, "-", "-",
+                        controller.getCurrentScreen());
+                continue;
+            }
+
+            // Warm up as long as we measure
+            for (int i = 0; i < iterations; i++) {
+                controller.runTask(task, loop);
+            }
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                controller.runTask(task, loop);
+            }
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            long totalSteps = (long) steps * iterations;
+            System.out.printf("%-18s %6d %10.1f %10s  ok%n", task.name, steps, elapsed / 1000.0 / totalSteps,
+                    allocated >= 0 ? String.valueOf(allocated / totalSteps) : "n/a");
+        }
+
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    // Bytes allocated by this thread so far, -1 if the JVM cannot tell
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
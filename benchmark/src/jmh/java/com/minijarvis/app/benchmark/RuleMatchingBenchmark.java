@@ -0,0 +1,80 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.llm.KeywordMatcher;
+import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule dispatch of MockLLMEngine. The legacy* benchmarks reproduce the
+ * previous lower-case + contains chain and regex split as a baseline; run
+ * with the gc profiler (enabled in build.gradle) to compare
+ * gc.alloc.rate.norm, which is 0 B/op for keywordMask.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleMatchingBenchmark {
+
+    @Param({"go back", "scroll down please", "click Network & internet", "please tap on search settings"})
+    public String instruction;
+
+    private final KeywordMatcher intents = new KeywordMatcher(
+            "type", "send", "write", "scroll", "back", "launch", "click", "tap", "press",
+            "down", "forward", "up", "backward");
+    private final MockLLMEngine engine = new MockLLMEngine(null);
+    private UIStructure uiStructure;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.load("settings");
+        // Built once per screen at extraction time in the app
+        uiStructure.getLowerClickable();
+    }
+
+    @Benchmark
+    public long keywordMask() {
+        return intents.matchMask(instruction);
+    }
+
+    @Benchmark
+    public int legacyContainsChain() {
+        String lower = instruction.toLowerCase();
+        if (lower.contains("type") || lower.contains("send") || lower.contains("write")) {
+            return 1;
+        }
+        if (lower.contains("scroll")) {
+            return 2;
+        }
+        if (lower.contains("back") || lower.contains("go back")) {
+            return 3;
+        }
+        if (lower.startsWith("open ") || lower.contains("launch")) {
+            return 4;
+        }
+        if (lower.contains("click") || lower.contains("tap") || lower.contains("press")) {
+            return 5;
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public String[] legacySplit() {
+        return instruction.split("\\s+");
+    }
+
+    @Benchmark
+    public MockLLMEngine.RuleMatch matchRules() {
+        return engine.matchRules(instruction, uiStructure);
+    }
+}
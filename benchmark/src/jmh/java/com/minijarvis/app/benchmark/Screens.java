@@ -0,0 +1,64 @@
+package com.minijarvis.app.benchmark;
+
+import com.google.gson.Gson;
+import com.minijarvis.app.model.UIStructure;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recorded screens bundled as benchmark resources
+ */
+public final class Screens {
+    public static final String[] NAMES = {"settings", "chat", "feed", "login"};
+
+    private static final Gson GSON = new Gson();
+
+    private Screens() {
+    }
+
+    private static final String[] WORDS = {
+            "Send", "Message", "Settings", "Search", "Profile", "Camera", "Photos", "Café",
+            "Share", "Delete", "Archive", "Notifications", "Privacy", "Account", "Storage",
+            "Network", "Display", "Sound", "Battery", "Résumé", "Contacts", "Calendar"};
+
+    /**
+     * Deterministic synthetic screen with the given number of labelled
+     * elements, one in ten of them text fields
+     */
+    public static UIStructure synthetic(int elements) {
+        int fields = elements / 10;
+        String[] clickable = new String[elements - fields];
+        String[] textFields = new String[fields];
+        for (int i = 0; i < clickable.length; i++) {
+            clickable[i] = label(i);
+        }
+        for (int i = 0; i < fields; i++) {
+            textFields[i] = label(clickable.length + i) + " field";
+        }
+        return new UIStructure("synthetic", clickable, textFields, "");
+    }
+
+    private static String label(int index) {
+        return WORDS[index % WORDS.length] + " " + WORDS[(index / WORDS.length) % WORDS.length] + " " + index;
+    }
+
+    /**
+     * Load a recorded screen from resources/screens/&lt;name&gt;.json
+     */
+    public static UIStructure load(String name) {
+        String path = "/screens/" + name + ".json";
+        try (InputStream in = Screens.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No recorded screen: " + path);
+            }
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return GSON.fromJson(reader, UIStructure.class);
+            }
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Failed to read " + path, e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.minijarvis.app.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves one in-memory file over local HTTP at a capped per-connection
+ * rate, like a CDN would, honouring single Range and If-Range headers
+ */
+public class StandInServer {
+    private final HttpServer server;
+    private final byte[] content;
+    private final long bytesPerSecond;
+    private final boolean ranges;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile String etag = "\"model-v1\"";
+
+    /**
+     * @param ranges whether to answer Range requests with 206, otherwise
+     *               every response is the whole file
+     */
+    public StandInServer(byte[] content, long bytesPerSecond, boolean ranges) throws IOException {
+        this.content = content;
+        this.bytesPerSecond = bytesPerSecond;
+        this.ranges = ranges;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/model.gguf", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public URL url() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/model.gguf");
+    }
+
+    /**
+     * Body bytes handed to the connection so far, over all requests. Each
+     * slice is counted before it is written, so once a client has read a
+     * range its bytes are included; a slice aborted by a closed connection
+     * may be counted as well.
+     */
+    public long served() {
+        return served.get();
+    }
+
+    /**
+     * Answer the next count requests with status and no body, e.g. 503
+     */
+    public StandInServer fail(int status, int count) {
+        failureStatus = status;
+        failures.set(count);
+        return this;
+    }
+
+    /**
+     * Requests answered with the failure status so far still pending
+     */
+    public int pendingFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Serve the file under a new ETag, as if it had been replaced
+     */
+    public StandInServer setEtag(String etag) {
+        this.etag = etag;
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        int start = 0;
+        int end = content.length - 1;
+        boolean partial = ranges && range != null && range.startsWith("bytes=")
+                && (ifRange == null || ifRange.equals(etag));
+        if (partial) {
+            String[] bounds = range.substring(6).split("-");
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + content.length);
+        }
+        if (ranges) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(partial ? 206 : 200, length);
+
+        // Write in slices paced to the per-connection rate
+        long begin = System.nanoTime();
+        int slice = 64 * 1024;
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < length; offset += slice) {
+                int count = Math.min(slice, length - offset);
+                // Count first: the client may finish and check before this handler resumes
+                served.addAndGet(count);
+                out.write(content, start + offset, count);
+                long dueNanos = (offset + count) * 1000000000L / bytesPerSecond;
+                long sleepMs = (dueNanos - (System.nanoTime() - begin)) / 1000000L;
+                if (sleepMs > 0) {
+                    Thread.sleep(sleepMs);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client went away, e.g. a cancelled download
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.model.TargetResolver;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index build (done at extraction time) and lookup cost of TargetResolver
+ * on synthetic screens; lookups must stay well under a millisecond at 1000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TargetResolverBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int elements;
+
+    private UIStructure uiStructure;
+    private TargetResolver resolver;
+    private String nearMiss;
+    private String caseMiss;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.synthetic(elements);
+        resolver = new TargetResolver(uiStructure);
+        String label = uiStructure.clickable[uiStructure.clickable.length / 2];
+        caseMiss = " " + label.toUpperCase() + " ";
+        // Drop one character from the middle
+        int cut = label.length() / 2;
+        nearMiss = label.substring(0, cut) + label.substring(cut + 1);
+    }
+
+    @Benchmark
+    public TargetResolver build() {
+        return new TargetResolver(uiStructure);
+    }
+
+    @Benchmark
+    public String resolveCaseAndSpacing() {
+        return resolver.resolve(caseMiss, TargetResolver.CLICKABLE);
+    }
+
+    @Benchmark
+    public String resolveTypo() {
+        return resolver.resolve(nearMiss, TargetResolver.CLICKABLE);
+    }
+
+    @Benchmark
+    public String resolveUnknown() {
+        return resolver.resolve("Completely unrelated button", TargetResolver.CLICKABLE);
+    }
+}
@@ -0,0 +1,60 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.TargetValidator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact target checks ActionExecutor runs before every click and type.
+ * Near-miss resolution is covered by TargetResolverBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TargetValidationBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int elements;
+
+    private UIStructure uiStructure;
+    private String firstClickable;
+    private String lastField;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.synthetic(elements);
+        // Copies, so equals cannot short-circuit on identity
+        firstClickable = new String(uiStructure.clickable[0]);
+        lastField = new String(uiStructure.textFields[uiStructure.textFields.length - 1]);
+    }
+
+    @Benchmark
+    public boolean clickFirst() {
+        return TargetValidator.isValidTarget(firstClickable, uiStructure.clickable, uiStructure.textFields);
+    }
+
+    @Benchmark
+    public boolean clickLastField() {
+        return TargetValidator.isValidTarget(lastField, uiStructure.clickable, uiStructure.textFields);
+    }
+
+    @Benchmark
+    public boolean clickMissing() {
+        return TargetValidator.isValidTarget("Missing", uiStructure.clickable, uiStructure.textFields);
+    }
+
+    @Benchmark
+    public boolean typeLastField() {
+        return TargetValidator.isTextFieldValid(lastField, uiStructure.textFields, uiStructure.focused);
+    }
+}
@@ -0,0 +1,37 @@
+package com.minijarvis.app.benchmark;
+
+/**
+ * Approximate SentencePiece token count for Gemma-style vocabularies:
+ * common words are one token, long words split every ~6 letters, and
+ * digits, punctuation and newlines are one token each. Good enough to
+ * compare two encodings of the same content off-device.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        int tokens = 0;
+        int letters = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                letters++;
+                continue;
+            }
+            tokens += wordTokens(letters);
+            letters = 0;
+            if (c == ' ') {
+                // A single space is merged into the following piece
+                continue;
+            }
+            tokens++;
+        }
+        return tokens + wordTokens(letters);
+    }
+
+    private static int wordTokens(int letters) {
+        return letters == 0 ? 0 : (letters + 5) / 6;
+    }
+}
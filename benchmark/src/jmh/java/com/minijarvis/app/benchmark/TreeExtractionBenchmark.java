@@ -0,0 +1,44 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.accessibility.RecordedNode;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full walk of a recorded window into a UIStructure, the observe phase of
+ * every agent step
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TreeExtractionBenchmark {
+
+    @Param({"settings/main", "settings/internet", "settings/add_network", "messages/inbox",
+            "messages/conversation"})
+    public String screen;
+
+    private ReplayController controller;
+
+    @Setup
+    public void setUp() {
+        String[] parts = screen.split("/");
+        RecordedNode root = Fixtures.screen(parts[0], parts[1]);
+        controller = new ReplayController(Collections.singletonMap(parts[1], root), parts[1]);
+    }
+
+    @Benchmark
+    public UIStructure extract() {
+        return controller.extractCurrentUI();
+    }
+}
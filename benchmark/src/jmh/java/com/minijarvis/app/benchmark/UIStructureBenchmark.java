@@ -0,0 +1,60 @@
+package com.minijarvis.app.benchmark;
+
+import com.google.gson.Gson;
+import com.minijarvis.app.llm.CompactUIEncoder;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-step UIStructure work on synthetic screens: Gson round trip (UI
+ * display, action cache), fingerprint (cache and macro keys) and the
+ * compact prompt encoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UIStructureBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int elements;
+
+    private final Gson gson = new Gson();
+    private UIStructure uiStructure;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        uiStructure = Screens.synthetic(elements);
+        json = gson.toJson(uiStructure);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(uiStructure);
+    }
+
+    @Benchmark
+    public UIStructure fromJson() {
+        return gson.fromJson(json, UIStructure.class);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return uiStructure.fingerprint();
+    }
+
+    @Benchmark
+    public String compactEncoding() {
+        return CompactUIEncoder.encode(uiStructure).getText();
+    }
+}
@@ -0,0 +1,71 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.benchmark.Screens;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt construction and response parsing of LLMEngine. Lives in the llm
+ * package to reach the package-private static helpers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LLMEngineBenchmark {
+    private static final String CLEAN_RESPONSE = "{\"action\":\"click\",\"target\":\"#12\",\"text\":\"\"}";
+    private static final String CHATTY_RESPONSE = "Sure! Here is the next action for you:\n```json\n" +
+            "{\n  \"action\": \"type\",\n  \"target\": \"Message\",\n  \"text\": \"On my way {eta 5 min}\"\n}\n```\n" +
+            "Let me know if you need anything else.";
+
+    @Param({"10", "100", "1000", "5000"})
+    public int elements;
+
+    private String uiText;
+    private final List<ActionModel> history = Arrays.asList(
+            new ActionModel(ActionModel.ACTION_CLICK, "Search", ""),
+            new ActionModel(ActionModel.ACTION_TYPE, "Search field", "wifi"));
+
+    @Setup
+    public void setUp() {
+        UIStructure uiStructure = Screens.synthetic(elements);
+        uiText = CompactUIEncoder.encode(uiStructure).getText();
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return LLMEngine.buildPrompt("turn on wifi", uiText, history);
+    }
+
+    @Benchmark
+    public String buildPromptSuffix() {
+        return LLMEngine.buildPromptSuffix("turn on wifi", uiText, history);
+    }
+
+    @Benchmark
+    public String extractJsonChatty() {
+        return LLMEngine.extractJsonFromResponse(CHATTY_RESPONSE);
+    }
+
+    @Benchmark
+    public ActionModel parseClean() {
+        return LLMEngine.parseActionResponse(CLEAN_RESPONSE);
+    }
+
+    @Benchmark
+    public ActionModel parseChatty() {
+        return LLMEngine.parseActionResponse(CHATTY_RESPONSE);
+    }
+}
@@ -0,0 +1,21 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for android.content.Context; benchmarks pass null or a
+ * subclass pointing at a temp directory
+ */
+public abstract class Context {
+    public abstract File getFilesDir();
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public AssetManager getAssets() {
+        return new AssetManager();
+    }
+}
@@ -0,0 +1,19 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM stand-in for android.content.res.AssetManager; serves the app's
+ * assets from the classpath
+ */
+public class AssetManager {
+    public InputStream open(String fileName) throws IOException {
+        InputStream input = AssetManager.class.getClassLoader().getResourceAsStream("assets/" + fileName);
+        if (input == null) {
+            throw new FileNotFoundException(fileName);
+        }
+        return input;
+    }
+}
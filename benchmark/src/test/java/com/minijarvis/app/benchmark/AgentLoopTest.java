@@ -0,0 +1,69 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.agent.MacroStore;
+import com.minijarvis.app.llm.ActionCache;
+import com.minijarvis.app.llm.ModelNotReadyException;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.ActionExecutor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * How AgentLoop ends a run whose decider cannot answer
+ */
+public class AgentLoopTest {
+    private static final String INSTRUCTION = "open display and turn on dark theme";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void modelNotReadyStopsWithoutCachingOrRecording() throws Exception {
+        ReplayController controller = new ReplayController(Fixtures.app("settings", "main"), "main");
+        ActionCache cache = new ActionCache(folder.newFile("cache.json"), ActionCache.DEFAULT_MAX_ENTRIES);
+        MacroStore macros = new MacroStore(folder.newFolder("macros"));
+        List<UIStructure> asked = new ArrayList<>();
+        AgentLoop loop = new AgentLoop((instruction, ui, history) -> {
+            asked.add(ui);
+            if (history.isEmpty()) {
+                return new ActionModel(ActionModel.ACTION_CLICK, "Display", "");
+            }
+            throw new ModelNotReadyException("Model not ready");
+        }, controller, new ActionExecutor(controller))
+                .setActionCache(cache)
+                .setMacroStore(macros);
+
+        AgentLoop.Result result = loop.run(INSTRUCTION, new AgentLoop.StepListener() {
+            @Override
+            public void onObserved(UIStructure uiStructure) {
+            }
+
+            @Override
+            public void onDecided(ActionModel action) {
+            }
+
+            @Override
+            public void onStep(AgentLoop.StepResult step) {
+            }
+        });
+
+        assertEquals(AgentLoop.STOP_MODEL_NOT_READY, result.stopReason);
+        assertFalse(result.isSuccess());
+        assertEquals(1, result.steps.size());
+        assertEquals("display", controller.getCurrentScreen());
+        // The unanswered screen is not cached as finished, and no macro is recorded
+        assertNull(cache.get(INSTRUCTION, asked.get(1)));
+        assertNull(macros.find(INSTRUCTION));
+    }
+}
@@ -0,0 +1,62 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.accessibility.RecordedNode;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.ActionExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A node that is found but refuses the action must count as a failure, on
+ * both the snapshot index and the tree search path
+ */
+public class RefusedActionTest {
+    private static final String SCREEN = "{\"package\": \"com.example.form\", \"class\": \"android.widget.FrameLayout\", "
+            + "\"children\": ["
+            + "{\"class\": \"android.widget.Button\", \"text\": \"Save\", \"clickable\": true, \"disabled\": true},"
+            + "{\"class\": \"android.widget.EditText\", \"text\": \"Name\", \"editable\": true, \"disabled\": true},"
+            + "{\"class\": \"android.widget.Button\", \"text\": \"Cancel\", \"clickable\": true}"
+            + "]}";
+
+    private ReplayController controller;
+
+    @Before
+    public void setUp() {
+        RecordedNode root = RecordedNode.fromJson(new StringReader(SCREEN));
+        controller = new ReplayController(Collections.singletonMap("form", root), "form");
+    }
+
+    @Test
+    public void refusedClickFails() {
+        // Tree search, then through the index built by extraction
+        assertFalse(controller.performClick("Save"));
+        controller.extractCurrentUI();
+        assertFalse(controller.performClick("Save"));
+        assertTrue(controller.performClick("Cancel"));
+    }
+
+    @Test
+    public void refusedTextFails() {
+        assertFalse(controller.performType("Name", "Ada"));
+        controller.extractCurrentUI();
+        assertFalse(controller.performType("Name", "Ada"));
+    }
+
+    @Test
+    public void executorReportsRefusal() {
+        ActionExecutor executor = new ActionExecutor(controller);
+        UIStructure ui = controller.extractCurrentUI();
+
+        assertFalse(executor.executeAction(new ActionModel(ActionModel.ACTION_CLICK, "Save", ""), ui));
+        assertFalse(executor.executeAction(new ActionModel(ActionModel.ACTION_TYPE, "Name", "Ada"), ui));
+        assertTrue(executor.executeAction(new ActionModel(ActionModel.ACTION_CLICK, "Cancel", ""), ui));
+    }
+}
@@ -0,0 +1,155 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.accessibility.RecordedNode;
+import com.minijarvis.app.agent.AgentLoop;
+import com.minijarvis.app.llm.MockLLMEngine;
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+import com.minijarvis.app.util.ActionExecutor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the task corpus and every recorded screen through UITree
+ * extraction, the click/type/scroll lookups and ActionExecutor
+ */
+public class ReplayCorpusTest {
+    private static final String[][] APPS = {{"settings", "main"}, {"messages", "inbox"}};
+
+    @Test
+    public void corpusDecisionsMatchExpected() throws Exception {
+        MockLLMEngine engine = new MockLLMEngine(null);
+        for (Fixtures.Task task : Fixtures.corpus()) {
+            assertNotNull(task.name + " has no expected actions", task.expected);
+            assertEquals(task.name, task.instructions.size(), task.expected.size());
+
+            ReplayController controller = new ReplayController(Fixtures.app(task.app, task.start), task.start);
+            AgentLoop loop = new AgentLoop(engine::generateAction, controller, new ActionExecutor(controller));
+            for (int i = 0; i < task.instructions.size(); i++) {
+                String instruction = task.instructions.get(i);
+                DecisionRecorder recorder = new DecisionRecorder();
+                AgentLoop.Result result = loop.run(instruction, recorder);
+
+                String step = task.name + ": " + instruction;
+                assertTrue(step + " stopped with " + result.stopReason, result.isSuccess());
+                assertFalse(step + " decided nothing", recorder.decided.isEmpty());
+                assertEquals(step, task.expected.get(i), recorder.decided.get(0));
+                assertTrue(step + " observed no screen", recorder.observed > 0);
+            }
+            assertEquals(task.name, task.end, controller.getCurrentScreen());
+        }
+    }
+
+    @Test
+    public void everyExtractedTargetResolves() {
+        for (String[] app : APPS) {
+            Map<String, RecordedNode> screens = Fixtures.app(app[0], app[1]);
+            ReplayController controller = new ReplayController(screens, app[1]);
+            ActionRecorder recorder = new ActionRecorder();
+            controller.setObserver(recorder);
+
+            for (String screen : screens.keySet()) {
+                controller.reset(screen);
+                UIStructure ui = controller.extractCurrentUI();
+                String where = app[0] + "/" + screen;
+                assertNotNull(where, ui);
+
+                for (String label : ui.clickable) {
+                    controller.reset(screen);
+                    recorder.actions.clear();
+                    assertTrue(where + " click " + label, controller.performClick(label));
+                    assertTrue(where + " click " + label, recorder.actions.contains(RecordedNode.ACTION_CLICK));
+                }
+                for (String label : ui.textFields) {
+                    controller.reset(screen);
+                    recorder.actions.clear();
+                    assertTrue(where + " type " + label, controller.performType(label, "text"));
+                    assertTrue(where + " type " + label, recorder.actions.contains(RecordedNode.ACTION_SET_TEXT));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void missingTargetIsNotActedOn() {
+        ReplayController controller = new ReplayController(Fixtures.app("settings", "main"), "main");
+        ActionRecorder recorder = new ActionRecorder();
+        controller.setObserver(recorder);
+
+        assertFalse(controller.performClick("No such setting"));
+        assertFalse(controller.performType("No such field", "text"));
+        assertTrue(recorder.actions.isEmpty());
+        assertEquals("main", controller.getCurrentScreen());
+    }
+
+    @Test
+    public void staleTargetFailsExecution() {
+        ReplayController controller = new ReplayController(Fixtures.app("settings", "main"), "main");
+        ActionExecutor executor = new ActionExecutor(controller);
+        UIStructure main = controller.extractCurrentUI();
+
+        assertTrue(executor.executeAction(new ActionModel(ActionModel.ACTION_CLICK, "Display", ""), main));
+        assertEquals("display", controller.getCurrentScreen());
+        // Decided on the old screen, the label is gone from the current one
+        assertFalse(executor.executeAction(new ActionModel(ActionModel.ACTION_CLICK, "Network & internet", ""), main));
+        assertEquals("display", controller.getCurrentScreen());
+    }
+
+    @Test
+    public void scrollReachesNestedContainer() {
+        ReplayController controller = new ReplayController(Fixtures.app("settings", "main"), "main");
+        ActionRecorder recorder = new ActionRecorder();
+        controller.setObserver(recorder);
+
+        assertTrue(controller.performScroll("forward"));
+        assertTrue(recorder.actions.contains(RecordedNode.ACTION_SCROLL_FORWARD));
+    }
+
+    @Test
+    public void backWithoutHistoryFails() {
+        ReplayController controller = new ReplayController(Fixtures.app("messages", "inbox"), "inbox");
+        assertFalse(controller.performBack());
+    }
+
+    private static class DecisionRecorder implements AgentLoop.StepListener {
+        final List<ActionModel> decided = new ArrayList<>();
+        int observed;
+
+        @Override
+        public void onObserved(UIStructure uiStructure) {
+            observed++;
+        }
+
+        @Override
+        public void onDecided(ActionModel action) {
+            decided.add(action);
+        }
+
+        @Override
+        public void onStep(AgentLoop.StepResult step) {
+        }
+    }
+
+    private static class ActionRecorder implements RecordedNode.ActionListener {
+        final List<String> actions = new ArrayList<>();
+
+        @Override
+        public void onAction(RecordedNode node, String action) {
+            actions.add(action);
+        }
+
+        @Override
+        public boolean isShowing(RecordedNode root) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.minijarvis.app.benchmark;
+
+import com.minijarvis.app.service.ChunkManifest;
+import com.minijarvis.app.service.SegmentedDownloader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs SegmentedDownloader against a local StandInServer: resume after a
+ * kill, servers without range support, transient errors mid-download, a
+ * file replaced on the server and chunk repair from the manifest
+ */
+public class SegmentedDownloaderTest {
+    private static final int SIZE = 8 * 1024 * 1024;
+    private static final long RATE = 4 * 1024 * 1024;
+    // Small chunks keep the rewind on resume well below the checked margin
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] content;
+    private StandInServer server;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[SIZE];
+        new Random(42).nextBytes(content);
+        target = new File(folder.getRoot(), "model.gguf");
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void resumesAfterInterruption() throws Exception {
+        server = new StandInServer(content, RATE, true);
+        interruptAtThird();
+
+        long servedBefore = server.served();
+        long size = downloader().download();
+        long refetched = server.served() - servedBefore;
+
+        assertEquals(SIZE, size);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        // The journal may trail the data by one checkpoint plus a chunk per segment
+        assertTrue("second attempt fetched " + refetched + " of " + SIZE, refetched < SIZE * 9L / 10);
+        // Digests from before and after the interruption must describe the file
+        assertVerified();
+    }
+
+    @Test
+    public void resumesAfterServiceUnavailable() throws Exception {
+        checkTransientFailure(503);
+    }
+
+    @Test
+    public void resumesAfterTooManyRequests() throws Exception {
+        checkTransientFailure(429);
+    }
+
+    @Test
+    public void changedFileDiscardsJournal() throws Exception {
+        server = new StandInServer(content, RATE, true);
+        SegmentedDownloader first = interruptAtThird();
+        server.setEtag("\"model-v2\"");
+
+        try {
+            downloader().download();
+            fail("Resumed against a replaced file");
+        } catch (IOException e) {
+            // Expected, If-Range was answered with the whole file
+        }
+        assertFalse(first.hasPartialDownload());
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void downloadsWithoutRanges() throws Exception {
+        server = new StandInServer(content, RATE * 4, false);
+        assertEquals(SIZE, downloader().download());
+
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertVerified();
+    }
+
+    @Test
+    public void repairsOnlyCorruptChunks() throws Exception {
+        server = new StandInServer(content, RATE * 4, true);
+        SegmentedDownloader downloader = downloader();
+        downloader.download();
+
+        // Flip a byte in two chunks, as storage corruption would
+        int[] damaged = {1, SIZE / CHUNK_SIZE - 2};
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            for (int chunk : damaged) {
+                long position = (long) chunk * CHUNK_SIZE + 12345;
+                file.seek(position);
+                file.write(content[(int) position] ^ 0x5a);
+            }
+        }
+        target.setLastModified(target.lastModified() - 2000);
+        assertFalse("stamp still valid after the file changed", ChunkManifest.isVerified(target));
+
+        ChunkManifest manifest = ChunkManifest.load(target);
+        List<Integer> corrupt = manifest.findCorruptChunks(target);
+        assertEquals(Arrays.asList(damaged[0], damaged[1]), corrupt);
+
+        long servedBefore = server.served();
+        downloader.repair(manifest, corrupt);
+        assertEquals((long) damaged.length * CHUNK_SIZE, server.served() - servedBefore);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue(ChunkManifest.isVerified(target));
+    }
+
+    @Test
+    public void hashesWholeFileFromStream() throws Exception {
+        server = new StandInServer(content, RATE * 4, true);
+        SegmentedDownloader downloader = downloader().setHashWholeFile(true);
+        downloader.download();
+
+        assertEquals(sha256(content), downloader.getFileSha256());
+        assertVerified();
+        assertNull(downloader().getFileSha256());
+    }
+
+    @Test
+    public void hashesWholeFileAcrossResume() throws Exception {
+        server = new StandInServer(content, RATE, true);
+        interruptAtThird(true);
+
+        SegmentedDownloader downloader = downloader().setHashWholeFile(true);
+        downloader.download();
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(content), downloader.getFileSha256());
+    }
+
+    @Test
+    public void hashesWholeFileWithoutRanges() throws Exception {
+        server = new StandInServer(content, RATE * 4, false);
+        SegmentedDownloader downloader = downloader().setHashWholeFile(true);
+        downloader.download();
+
+        assertEquals(sha256(content), downloader.getFileSha256());
+    }
+
+    @Test
+    public void parallelResumeIsNotHashedWhole() throws Exception {
+        server = new StandInServer(content, RATE, true);
+        interruptAtThird();
+
+        // The journal already splits the file into several ranges
+        SegmentedDownloader downloader = downloader().setHashWholeFile(true);
+        downloader.download();
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertNull(downloader.getFileSha256());
+    }
+
+    /**
+     * A resumed download whose next request fails with status retries the
+     * range and keeps the journal instead of starting over
+     */
+    private void checkTransientFailure(int status) throws Exception {
+        server = new StandInServer(content, RATE, true);
+        interruptAtThird();
+        server.fail(status, 1);
+
+        long servedBefore = server.served();
+        assertEquals(SIZE, downloader().download());
+        long refetched = server.served() - servedBefore;
+
+        assertEquals(0, server.pendingFailures());
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertTrue("HTTP " + status + " restarted the download, fetched " + refetched + " of " + SIZE,
+                refetched < SIZE * 9L / 10);
+        assertVerified();
+    }
+
+    /**
+     * Kill a download once about a third has arrived
+     *
+     * @return the interrupted downloader
+     */
+    private SegmentedDownloader interruptAtThird() throws Exception {
+        return interruptAtThird(false);
+    }
+
+    private SegmentedDownloader interruptAtThird(boolean hashWholeFile) throws Exception {
+        Thread worker = Thread.currentThread();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        SegmentedDownloader first = downloader()
+                .setHashWholeFile(hashWholeFile)
+                .setProgressInterval(100)
+                .setProgressListener((done, total) -> {
+                    if (done > total / 3 && interrupted.compareAndSet(false, true)) {
+                        worker.interrupt();
+                    }
+                });
+        try {
+            first.download();
+            fail("First attempt was not interrupted");
+        } catch (InterruptedException e) {
+            // Expected
+        }
+        Thread.interrupted();
+        assertTrue("no journal after interruption", first.hasPartialDownload());
+        assertFalse(target.exists());
+        return first;
+    }
+
+    private SegmentedDownloader downloader() throws IOException {
+        return new SegmentedDownloader(server.url(), target).setChunkSize(CHUNK_SIZE);
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // A full rehash agrees with the digests taken during the download
+    private void assertVerified() throws Exception {
+        assertTrue(ChunkManifest.isVerified(target));
+        ChunkManifest manifest = ChunkManifest.load(target);
+        assertTrue(manifest != null && manifest.findCorruptChunks(target).isEmpty());
+    }
+}
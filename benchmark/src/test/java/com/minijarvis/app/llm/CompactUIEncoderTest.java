@@ -0,0 +1,46 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Element references and numeric labels must not be mistaken for each other
+ */
+public class CompactUIEncoderTest {
+    // A dialer: the label "7" is the ninth element, "Call" the fourth
+    private static final UIStructure DIALER = new UIStructure("com.android.dialer",
+            new String[]{"1", "2", "3", "Call", "5", "6", "#2", "8", "7"}, new String[]{"Number"}, "");
+
+    private final CompactUIEncoder.Encoding encoding = CompactUIEncoder.encode(DIALER);
+
+    @Test
+    public void numericLabelIsKept() {
+        assertEquals("7", encoding.resolveTarget("7"));
+        assertEquals("1", encoding.resolve(new ActionModel(ActionModel.ACTION_CLICK, "1", "")).target);
+    }
+
+    @Test
+    public void referenceResolvesToLabel() {
+        assertTrue(encoding.getText().contains("#4 Call\n"));
+        assertEquals("Call", encoding.resolveTarget("#4"));
+        assertEquals("7", encoding.resolveTarget(" #9 "));
+        assertEquals("Number", encoding.resolveTarget("#10"));
+        assertEquals("#11", encoding.resolveTarget("#11"));
+    }
+
+    @Test
+    public void labelShapedLikeReferenceWins() {
+        assertEquals("#2", encoding.resolveTarget("#2"));
+        String grammar = ActionGrammar.build(encoding);
+        // "#2" is offered once, as the label; element 2 stays reachable as "2"
+        assertEquals(grammar.indexOf("\"\\\"#2\\\"\""), grammar.lastIndexOf("\"\\\"#2\\\"\""));
+        assertTrue(grammar.contains("\"\\\"#4\\\"\""));
+        assertFalse(grammar.contains("\"\\\"#11\\\"\""));
+    }
+}
@@ -0,0 +1,57 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Confidence of the rule matches RoutingEngine routes on
+ */
+public class MockLLMEngineTest {
+    private static final UIStructure SCREEN = new UIStructure("com.android.settings",
+            new String[]{"Wi-Fi", "Group settings", "Backup"}, new String[0], "");
+
+    private final MockLLMEngine rules = new MockLLMEngine(null);
+
+    @Test
+    public void bareScrollIsExact() {
+        assertScroll("scroll down", "forward", MockLLMEngine.CONFIDENCE_EXACT);
+        assertScroll("  Scroll Forward ", "forward", MockLLMEngine.CONFIDENCE_EXACT);
+        assertScroll("scroll up", "backward", MockLLMEngine.CONFIDENCE_EXACT);
+        assertScroll("scroll backward", "backward", MockLLMEngine.CONFIDENCE_EXACT);
+    }
+
+    @Test
+    public void scrollWithMoreToDoIsLeftToTheModel() {
+        assertScroll("scroll down and tap Wi-Fi", "forward", MockLLMEngine.CONFIDENCE_PARTIAL);
+        assertScroll("scroll up to the top, then open Backup", "backward", MockLLMEngine.CONFIDENCE_PARTIAL);
+        assertScroll("scroll", "forward", MockLLMEngine.CONFIDENCE_PARTIAL);
+    }
+
+    @Test
+    public void directionsMatchWholeWordsOnly() {
+        // "group", "backup" and "setup" contain "up" but name no direction
+        assertScroll("scroll to group settings", "forward", MockLLMEngine.CONFIDENCE_PARTIAL);
+        assertScroll("scroll to backup", "forward", MockLLMEngine.CONFIDENCE_PARTIAL);
+        assertScroll("scroll through setup", "forward", MockLLMEngine.CONFIDENCE_PARTIAL);
+        assertScroll("scroll the list up", "backward", MockLLMEngine.CONFIDENCE_PARTIAL);
+    }
+
+    @Test
+    public void bareBackIsExact() {
+        MockLLMEngine.RuleMatch match = rules.matchRules("go back", SCREEN);
+        assertEquals(ActionModel.ACTION_GO_BACK, match.action.action);
+        assertEquals(MockLLMEngine.CONFIDENCE_EXACT, match.confidence, 0);
+        assertEquals(MockLLMEngine.CONFIDENCE_PARTIAL, rules.matchRules("go back to chats", SCREEN).confidence, 0);
+    }
+
+    private void assertScroll(String instruction, String direction, float confidence) {
+        MockLLMEngine.RuleMatch match = rules.matchRules(instruction, SCREEN);
+        assertEquals(instruction, ActionModel.ACTION_SCROLL, match.action.action);
+        assertEquals(instruction, direction, match.action.target);
+        assertEquals(instruction, confidence, match.confidence, 0);
+    }
+}
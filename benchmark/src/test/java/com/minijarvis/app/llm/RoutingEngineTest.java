@@ -0,0 +1,97 @@
+package com.minijarvis.app.llm;
+
+import com.minijarvis.app.model.ActionModel;
+import com.minijarvis.app.model.UIStructure;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Which instructions RoutingEngine answers from the rules, and what it does
+ * while the model is not loaded
+ */
+public class RoutingEngineTest {
+    private static final UIStructure SCREEN = new UIStructure("com.android.settings",
+            new String[]{"Wi-Fi", "Bluetooth"}, new String[0], "");
+
+    /**
+     * Stands in for LLMEngine, answering every call with a fixed action
+     */
+    private static class FakeModel implements InferenceEngine {
+        final ActionModel answer = new ActionModel(ActionModel.ACTION_CLICK, "Bluetooth", "");
+        boolean ready;
+        int calls;
+
+        @Override
+        public boolean initialize() {
+            return ready;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public ActionModel generateAction(String userInstruction, UIStructure uiStructure) {
+            return generateAction(userInstruction, uiStructure, Collections.<ActionModel>emptyList());
+        }
+
+        @Override
+        public ActionModel generateAction(String userInstruction, UIStructure uiStructure,
+                                          List<ActionModel> history) {
+            calls++;
+            return answer;
+        }
+
+        @Override
+        public void cancelGeneration() {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+
+    private final FakeModel model = new FakeModel();
+    private final RoutingEngine router = new RoutingEngine(new MockLLMEngine(null), model);
+
+    @Test
+    public void confidentRuleSkipsTheModel() {
+        ActionModel action = router.generateAction("scroll down", SCREEN);
+        assertEquals(new ActionModel(ActionModel.ACTION_SCROLL, "forward", ""), action);
+        assertEquals(0, model.calls);
+        assertEquals(1, router.getRuleHits());
+    }
+
+    @Test
+    public void unsureRuleGoesToTheModel() {
+        model.ready = true;
+        assertEquals(model.answer, router.generateAction("scroll down and tap Bluetooth", SCREEN));
+        assertEquals(1, model.calls);
+    }
+
+    @Test
+    public void confidentRuleStillWorksWithoutModel() {
+        assertEquals(ActionModel.ACTION_GO_BACK, router.generateAction("go back", SCREEN).action);
+    }
+
+    @Test
+    public void unsureRuleWithoutModelIsNotGuessed() {
+        for (String instruction : new String[]{"scroll down and tap Bluetooth", "make it brighter"}) {
+            try {
+                ActionModel action = router.generateAction(instruction, SCREEN);
+                fail(instruction + " answered with " + action);
+            } catch (ModelNotReadyException e) {
+                // Expected
+            }
+        }
+        assertEquals(0, model.calls);
+        assertEquals(0, router.getRuleHits());
+    }
+}
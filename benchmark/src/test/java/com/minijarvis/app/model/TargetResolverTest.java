@@ -0,0 +1,60 @@
+package com.minijarvis.app.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Which near misses TargetResolver maps to a label, and which it must leave
+ * alone because the label means something else
+ */
+public class TargetResolverTest {
+    private static final UIStructure SCREEN = new UIStructure("com.example.app",
+            new String[]{"Turn off", "Sent", "Café", "Wi-Fi", "Network & internet", "Notifications",
+                    "Button 12", "+", "Settings"},
+            new String[]{"Search"}, "");
+
+    private final TargetResolver resolver = new TargetResolver(SCREEN);
+
+    @Test
+    public void formattingDifferencesResolve() {
+        assertResolves(" SENT ", "Sent");
+        assertResolves("Cafe", "Café");
+        assertResolves("wifi", "Wi-Fi");
+        assertResolves("Wi Fi", "Wi-Fi");
+        assertResolves("network internet", "Network & internet");
+        assertResolves("Turn off.", "Turn off");
+        assertResolves(" + ", "+");
+    }
+
+    @Test
+    public void typoInLongWordResolves() {
+        assertResolves("Notifcations", "Notifications");
+        assertResolves("settngs", "Settings");
+    }
+
+    @Test
+    public void differentShortWordDoesNotResolve() {
+        assertNull(resolver.resolve("turn on", TargetResolver.CLICKABLE));
+        assertNull(resolver.resolve("send", TargetResolver.CLICKABLE));
+        assertNull(resolver.resolve("Turn of", TargetResolver.CLICKABLE));
+        assertNull(resolver.resolve("Cafes", TargetResolver.CLICKABLE));
+    }
+
+    @Test
+    public void differentNumberDoesNotResolve() {
+        assertNull(resolver.resolve("Button 13", TargetResolver.CLICKABLE));
+        assertResolves("button 12", "Button 12");
+    }
+
+    @Test
+    public void kindMaskApplies() {
+        assertNull(resolver.resolve("search", TargetResolver.CLICKABLE));
+        assertEquals("Search", resolver.resolve("search", TargetResolver.FIELD));
+    }
+
+    private void assertResolves(String target, String label) {
+        assertEquals(target, label, resolver.resolve(target, TargetResolver.CLICKABLE));
+    }
+}